@@ -0,0 +1,82 @@
+/**
+ * Define cómo se guarda el contenido de cada posición de un campo.
+ * Campo delega en un almacenamiento toda lectura y escritura de
+ * posiciones, de modo que se puede elegir la representación en
+ * memoria sin cambiar el código que usa al campo.
+ */
+public interface AlmacenDeCampo
+{
+    /**
+     * @param fila La fila deseada.
+     * @param columna La columna deseada.
+     * @return El animal ubicado en la posicion, o null si no hay uno.
+     */
+    Animal getAnimalEn(int fila, int columna);
+
+    /**
+     * @param fila La fila deseada.
+     * @param columna La columna deseada.
+     * @return El código de especie del ocupante, o Especie.VACIO.
+     */
+    int getEspecieEn(int fila, int columna);
+
+    /**
+     * @param fila La fila deseada.
+     * @param columna La columna deseada.
+     * @return La edad del ocupante al ubicarlo, o 0 si no hay uno.
+     */
+    default int getEdadEn(int fila, int columna)
+    {
+        Animal animal = getAnimalEn(fila, columna);
+        return animal == null ? 0 : animal.getEdad();
+    }
+
+    /**
+     * @param fila La fila deseada.
+     * @param columna La columna deseada.
+     * @return El nivel de comida del ocupante al ubicarlo si es un
+     *         zorro, o 0.
+     */
+    default int getNivelDeComidaEn(int fila, int columna)
+    {
+        Animal animal = getAnimalEn(fila, columna);
+        return animal instanceof Zorro ? ((Zorro) animal).getNivelDeComida() : 0;
+    }
+
+    /**
+     * Coloca un animal en una posición dada. Si ya existe un animal
+     * en esa posición, se perderá.
+     * @param animal El animal a ubicar.
+     * @param fila La fila de la posición.
+     * @param columna La columna de la posición.
+     */
+    void ubicar(Animal animal, int fila, int columna);
+
+    /**
+     * Vacía una posición.
+     * @param fila La fila de la posición.
+     * @param columna La columna de la posición.
+     */
+    void vaciar(int fila, int columna);
+
+    /**
+     * Indica que el contenido actual es el estado completo del paso
+     * dado. Sólo lo usan los almacenamientos persistentes.
+     * @param paso El paso de la simulación.
+     */
+    default void sellar(int paso)
+    {
+    }
+
+    /**
+     * Indica si se puede escribir desde varios hilos a la vez. Las filas
+     * se agrupan de a getFilasPorGrupo() filas consecutivas; dos hilos
+     * pueden escribir a la vez siempre que lo hagan en grupos distintos.
+     * @return La cantidad de filas por grupo, o 0 si no se admiten
+     *         escrituras concurrentes.
+     */
+    default int getFilasPorGrupo()
+    {
+        return 0;
+    }
+}
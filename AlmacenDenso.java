@@ -0,0 +1,48 @@
+/**
+ * Almacenamiento original del campo: una matriz de referencias a
+ * los animales, una por posición.
+ */
+public class AlmacenDenso implements AlmacenDeCampo
+{
+    // Almacenamiento de los animales.
+    private Animal[][] campo;
+
+    /**
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     */
+    public AlmacenDenso(int largo, int ancho)
+    {
+        campo = new Animal[largo][ancho];
+    }
+
+    public Animal getAnimalEn(int fila, int columna)
+    {
+        return campo[fila][columna];
+    }
+
+    public int getEspecieEn(int fila, int columna)
+    {
+        Animal animal = campo[fila][columna];
+        return animal == null ? Especie.VACIO : animal.getEspecie();
+    }
+
+    public void ubicar(Animal animal, int fila, int columna)
+    {
+        campo[fila][columna] = animal;
+    }
+
+    public void vaciar(int fila, int columna)
+    {
+        campo[fila][columna] = null;
+    }
+
+    /**
+     * Cada posición es independiente: cualquier par de filas distintas
+     * se puede escribir a la vez.
+     */
+    public int getFilasPorGrupo()
+    {
+        return 1;
+    }
+}
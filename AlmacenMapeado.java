@@ -0,0 +1,381 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Almacenamiento del campo fuera del heap, en un archivo mapeado en
+ * memoria. Cada posición ocupa un registro de ancho fijo con la especie,
+ * la edad y el nivel de comida de su ocupante, de modo que la memoria
+ * del campo no la recorre el recolector de basura. En el heap sólo se
+ * guarda una tabla de los ocupantes actuales, que crece con la población
+ * y no con el área.
+ * El archivo sirve además como imagen para continuar una simulación:
+ * sellar marca su contenido como el estado completo de un paso, y la
+ * marca se borra apenas el campo vuelve a modificarse. Un animal muerto
+ * durante el paso (un conejo comido después de moverse) sigue ocupando
+ * su posición hasta el paso siguiente; sellar anota en cada registro si
+ * su ocupante está vivo, así la imagen lo distingue. Antes de marcarlo,
+ * sellar fuerza el contenido al disco y después la marca, así una imagen
+ * sellada sobrevive a una caída del sistema; a cambio, cada paso espera
+ * a que se escriban las páginas modificadas.
+ */
+public class AlmacenMapeado implements AlmacenDeCampo
+{
+    // Identifica a los archivos de imagen del campo.
+    private static final int MAGICO = 0x5A794331;
+    private static final int VERSION = 2;
+    // La versión anterior, sin el estado de los ocupantes, en la que
+    // todos se leen como vivos.
+    private static final int VERSION_SIN_ESTADO = 1;
+    // Cabecera: mágico, versión, largo, ancho (int), paso (long), sellado (int).
+    private static final int CABECERA = 64;
+    private static final int POSICION_DEL_PASO = 16;
+    private static final int POSICION_DEL_SELLO = 24;
+    // Registro de cada posición: especie (byte), estado (byte),
+    // nivel de comida (short), edad (int).
+    private static final int TAMANIO_DE_REGISTRO = 8;
+    private static final int POSICION_DEL_ESTADO = 1;
+    // Bit del estado que indica que el ocupante está vivo.
+    private static final int VIVO = 1;
+    private static final int POSICION_DEL_NIVEL = 2;
+    private static final int POSICION_DE_LA_EDAD = 4;
+    // Bytes mapeados por región; un archivo grande se mapea en varias.
+    private static final int BITS_DE_REGION = 30;
+    private static final long MASCARA_DE_REGION = (1L << BITS_DE_REGION) - 1;
+
+    private int ancho;
+    // Las regiones mapeadas del archivo.
+    private MappedByteBuffer[] regiones;
+    // Los ocupantes de las posiciones, indexados por posición.
+    private TablaDeOcupantes ocupantes;
+    // Si la cabecera indica que el contenido es un estado completo.
+    private boolean sellado;
+
+    /**
+     * Recibe los registros de una imagen del campo.
+     */
+    public interface LectorDeRegistros
+    {
+        /**
+         * @param fila La fila de la posición.
+         * @param columna La columna de la posición.
+         * @param especie El código de especie del ocupante.
+         * @param edad La edad del ocupante.
+         * @param nivelDeComida El nivel de comida del ocupante.
+         * @param vivo Si el ocupante está vivo; si no, es un muerto que
+         *             sólo ocupa su posición hasta el paso siguiente.
+         */
+        void leer(int fila, int columna, int especie, int edad, int nivelDeComida, boolean vivo);
+    }
+
+    /**
+     * Crea un campo vacío en el archivo dado, reemplazando su contenido.
+     * @param archivo El archivo donde se mapea el campo.
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     */
+    public AlmacenMapeado(Path archivo, int largo, int ancho)
+    {
+        this.ancho = ancho;
+        long tamanio = CABECERA + (long) largo * ancho * TAMANIO_DE_REGISTRO;
+        try(RandomAccessFile acceso = new RandomAccessFile(archivo.toFile(), "rw")) {
+            // Truncar y volver a extender deja el archivo en ceros.
+            acceso.setLength(0);
+            acceso.setLength(tamanio);
+            regiones = mapear(acceso.getChannel(), FileChannel.MapMode.READ_WRITE, tamanio);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo mapear " + archivo, e);
+        }
+        ocupantes = new TablaDeOcupantes();
+        MappedByteBuffer cabecera = regiones[0];
+        cabecera.putInt(0, MAGICO);
+        cabecera.putInt(4, VERSION);
+        cabecera.putInt(8, largo);
+        cabecera.putInt(12, ancho);
+        sellado = false;
+    }
+
+    public Animal getAnimalEn(int fila, int columna)
+    {
+        if(getEspecieEn(fila, columna) == Especie.VACIO) {
+            return null;
+        }
+        return ocupantes.buscar(indice(fila, columna));
+    }
+
+    public int getEspecieEn(int fila, int columna)
+    {
+        long posicion = posicion(indice(fila, columna));
+        return regiones[(int) (posicion >>> BITS_DE_REGION)].get((int) (posicion & MASCARA_DE_REGION));
+    }
+
+    public void ubicar(Animal animal, int fila, int columna)
+    {
+        quitarSello();
+        long indice = indice(fila, columna);
+        long posicion = posicion(indice);
+        MappedByteBuffer region = regiones[(int) (posicion >>> BITS_DE_REGION)];
+        int enRegion = (int) (posicion & MASCARA_DE_REGION);
+        int nivelDeComida = 0;
+        if(animal instanceof Zorro) {
+            nivelDeComida = ((Zorro) animal).getNivelDeComida();
+        }
+        region.put(enRegion, (byte) animal.getEspecie());
+        region.put(enRegion + POSICION_DEL_ESTADO, (byte) (animal.estaVivo() ? VIVO : 0));
+        region.putShort(enRegion + POSICION_DEL_NIVEL, (short) nivelDeComida);
+        region.putInt(enRegion + POSICION_DE_LA_EDAD, animal.getEdad());
+        ocupantes.poner(indice, animal);
+    }
+
+    public void vaciar(int fila, int columna)
+    {
+        quitarSello();
+        long indice = indice(fila, columna);
+        long posicion = posicion(indice);
+        regiones[(int) (posicion >>> BITS_DE_REGION)].putLong((int) (posicion & MASCARA_DE_REGION), 0L);
+        ocupantes.quitar(indice);
+    }
+
+    /**
+     * Marca el contenido del archivo como el estado completo del paso
+     * dado. Primero anota en cada registro si su ocupante sigue vivo y
+     * fuerza el contenido al disco; después escribe y fuerza la marca.
+     * La marca se borra con la siguiente modificación.
+     */
+    public void sellar(int paso)
+    {
+        ocupantes.recorrer(this::anotarEstado);
+        for(MappedByteBuffer region : regiones) {
+            region.force();
+        }
+        MappedByteBuffer cabecera = regiones[0];
+        cabecera.putLong(POSICION_DEL_PASO, paso);
+        cabecera.putInt(POSICION_DEL_SELLO, 1);
+        cabecera.force(0, CABECERA);
+        sellado = true;
+    }
+
+    /**
+     * Escribe en el registro de una posición si su ocupante está vivo.
+     */
+    private void anotarEstado(long indice, Animal animal)
+    {
+        long posicion = posicion(indice);
+        regiones[(int) (posicion >>> BITS_DE_REGION)].put((int) (posicion & MASCARA_DE_REGION) + POSICION_DEL_ESTADO,
+                                                         (byte) (animal.estaVivo() ? VIVO : 0));
+    }
+
+    /**
+     * Lee una imagen del campo guardada por un AlmacenMapeado.
+     * @param archivo El archivo de la imagen.
+     * @param largo El largo esperado del campo.
+     * @param ancho El ancho esperado del campo.
+     * @param lector Recibe cada posición ocupada; puede ser null para
+     *               consultar sólo el paso.
+     * @return El paso de la imagen, o -1 si el archivo no existe, no
+     *         corresponde a un campo de esas dimensiones o no está sellado.
+     */
+    public static long leerImagen(Path archivo, int largo, int ancho, LectorDeRegistros lector)
+    {
+        long tamanio = CABECERA + (long) largo * ancho * TAMANIO_DE_REGISTRO;
+        if(!Files.isRegularFile(archivo)) {
+            return -1;
+        }
+        try(RandomAccessFile acceso = new RandomAccessFile(archivo.toFile(), "r")) {
+            if(acceso.length() != tamanio) {
+                return -1;
+            }
+            MappedByteBuffer[] regiones = mapear(acceso.getChannel(), FileChannel.MapMode.READ_ONLY, tamanio);
+            MappedByteBuffer cabecera = regiones[0];
+            int version = cabecera.getInt(4);
+            if(cabecera.getInt(0) != MAGICO || (version != VERSION && version != VERSION_SIN_ESTADO)
+                    || cabecera.getInt(8) != largo || cabecera.getInt(12) != ancho
+                    || cabecera.getInt(POSICION_DEL_SELLO) != 1) {
+                return -1;
+            }
+            if(lector != null) {
+                for(int fila = 0; fila < largo; fila++) {
+                    for(int columna = 0; columna < ancho; columna++) {
+                        long posicion = CABECERA + ((long) fila * ancho + columna) * TAMANIO_DE_REGISTRO;
+                        MappedByteBuffer region = regiones[(int) (posicion >>> BITS_DE_REGION)];
+                        int enRegion = (int) (posicion & MASCARA_DE_REGION);
+                        int especie = region.get(enRegion);
+                        if(especie != Especie.VACIO) {
+                            lector.leer(fila, columna, especie,
+                                        region.getInt(enRegion + POSICION_DE_LA_EDAD),
+                                        region.getShort(enRegion + POSICION_DEL_NIVEL),
+                                        version == VERSION_SIN_ESTADO
+                                        || (region.get(enRegion + POSICION_DEL_ESTADO) & VIVO) != 0);
+                        }
+                    }
+                }
+            }
+            return cabecera.getLong(POSICION_DEL_PASO);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo leer " + archivo, e);
+        }
+    }
+
+    /**
+     * Borra la marca de estado completo antes de la primera modificación.
+     */
+    private void quitarSello()
+    {
+        if(sellado) {
+            regiones[0].putInt(POSICION_DEL_SELLO, 0);
+            sellado = false;
+        }
+    }
+
+    private long indice(int fila, int columna)
+    {
+        return (long) fila * ancho + columna;
+    }
+
+    /**
+     * @return La posición en el archivo del registro de una posición.
+     */
+    private static long posicion(long indice)
+    {
+        return CABECERA + indice * TAMANIO_DE_REGISTRO;
+    }
+
+    /**
+     * Mapea el archivo en regiones de 2^BITS_DE_REGION bytes. Como los
+     * registros miden 8 bytes ninguno queda partido entre dos regiones.
+     */
+    private static MappedByteBuffer[] mapear(FileChannel canal, FileChannel.MapMode modo, long tamanio)
+        throws IOException
+    {
+        int cantidad = (int) ((tamanio + MASCARA_DE_REGION) >>> BITS_DE_REGION);
+        MappedByteBuffer[] regiones = new MappedByteBuffer[cantidad];
+        for(int i = 0; i < cantidad; i++) {
+            long inicio = (long) i << BITS_DE_REGION;
+            regiones[i] = canal.map(modo, inicio, Math.min(1L << BITS_DE_REGION, tamanio - inicio));
+            regiones[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return regiones;
+    }
+
+    /**
+     * Recibe los ocupantes de la tabla con el índice de su posición.
+     */
+    private interface VisitanteDeOcupantes
+    {
+        void visitar(long indice, Animal animal);
+    }
+
+    /**
+     * Tabla hash de direccionamiento abierto que asocia el índice de una
+     * posición con su ocupante. Usa sondeo lineal y, al quitar, desplaza
+     * hacia atrás las entradas siguientes para no dejar marcas de borrado.
+     */
+    private static class TablaDeOcupantes
+    {
+        private long[] claves;
+        private Animal[] valores;
+        private int cantidad;
+
+        private TablaDeOcupantes()
+        {
+            claves = new long[64];
+            valores = new Animal[64];
+            cantidad = 0;
+        }
+
+        private Animal buscar(long clave)
+        {
+            int mascara = claves.length - 1;
+            for(int i = dispersar(clave) & mascara; valores[i] != null; i = (i + 1) & mascara) {
+                if(claves[i] == clave) {
+                    return valores[i];
+                }
+            }
+            return null;
+        }
+
+        private void poner(long clave, Animal animal)
+        {
+            int mascara = claves.length - 1;
+            int i = dispersar(clave) & mascara;
+            while(valores[i] != null) {
+                if(claves[i] == clave) {
+                    valores[i] = animal;
+                    return;
+                }
+                i = (i + 1) & mascara;
+            }
+            claves[i] = clave;
+            valores[i] = animal;
+            cantidad++;
+            if(cantidad * 2 > claves.length) {
+                agrandar();
+            }
+        }
+
+        private void quitar(long clave)
+        {
+            int mascara = claves.length - 1;
+            int i = dispersar(clave) & mascara;
+            while(valores[i] != null && claves[i] != clave) {
+                i = (i + 1) & mascara;
+            }
+            if(valores[i] == null) {
+                return;
+            }
+            valores[i] = null;
+            cantidad--;
+            // Reubica las entradas que quedaron después del hueco.
+            for(int j = (i + 1) & mascara; valores[j] != null; j = (j + 1) & mascara) {
+                int deseada = dispersar(claves[j]) & mascara;
+                // Mueve la entrada si el hueco está entre su posición
+                // deseada y su posición actual (recorriendo en círculo).
+                if(((j - deseada) & mascara) >= ((j - i) & mascara)) {
+                    claves[i] = claves[j];
+                    valores[i] = valores[j];
+                    valores[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        /**
+         * Pasa cada entrada al visitante, en el orden de la tabla.
+         */
+        private void recorrer(VisitanteDeOcupantes visitante)
+        {
+            for(int i = 0; i < valores.length; i++) {
+                if(valores[i] != null) {
+                    visitante.visitar(claves[i], valores[i]);
+                }
+            }
+        }
+
+        private void agrandar()
+        {
+            long[] clavesViejas = claves;
+            Animal[] valoresViejos = valores;
+            claves = new long[clavesViejas.length * 2];
+            valores = new Animal[valoresViejos.length * 2];
+            cantidad = 0;
+            for(int i = 0; i < clavesViejas.length; i++) {
+                if(valoresViejos[i] != null) {
+                    poner(clavesViejas[i], valoresViejos[i]);
+                }
+            }
+        }
+
+        private static int dispersar(long clave)
+        {
+            long h = clave * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
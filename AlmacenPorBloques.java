@@ -0,0 +1,149 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Almacenamiento disperso del campo para campos enormes y mayormente
+ * vacíos. El campo se divide en bloques cuadrados de LADO_DE_BLOQUE
+ * posiciones de lado; un bloque se crea la primera vez que se escribe
+ * en él y se libera cuando vuelve a quedar vacío, así la memoria usada
+ * depende de la cantidad de bloques ocupados y no del área.
+ * Ubicar una posición cuesta dos desplazamientos de bits y dos accesos
+ * a arreglos, de modo que las adyacencias que cruzan el borde de un
+ * bloque cuestan lo mismo que las interiores.
+ */
+public class AlmacenPorBloques implements AlmacenDeCampo
+{
+    // Logaritmo en base 2 del lado de los bloques.
+    private static final int BITS_DE_BLOQUE = 6;
+    // Cantidad de posiciones por lado de cada bloque.
+    public static final int LADO_DE_BLOQUE = 1 << BITS_DE_BLOQUE;
+    private static final int MASCARA_DE_BLOQUE = LADO_DE_BLOQUE - 1;
+
+    // Los bloques, por fila de bloques. Las filas de bloques también se
+    // crean recién cuando se escribe en ellas.
+    private Bloque[][] bloques;
+    // Cantidad de bloques por fila.
+    private int bloquesPorFila;
+    // Cantidad de bloques creados actualmente.
+    private AtomicInteger cantidadDeBloques;
+
+    /**
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     */
+    public AlmacenPorBloques(int largo, int ancho)
+    {
+        bloques = new Bloque[(largo + MASCARA_DE_BLOQUE) >> BITS_DE_BLOQUE][];
+        bloquesPorFila = (ancho + MASCARA_DE_BLOQUE) >> BITS_DE_BLOQUE;
+        cantidadDeBloques = new AtomicInteger();
+    }
+
+    public Animal getAnimalEn(int fila, int columna)
+    {
+        Bloque bloque = getBloque(fila, columna);
+        if(bloque == null) {
+            return null;
+        }
+        return bloque.animales[indiceEnBloque(fila, columna)];
+    }
+
+    public int getEspecieEn(int fila, int columna)
+    {
+        Bloque bloque = getBloque(fila, columna);
+        if(bloque == null) {
+            return Especie.VACIO;
+        }
+        return bloque.especies[indiceEnBloque(fila, columna)];
+    }
+
+    public void ubicar(Animal animal, int fila, int columna)
+    {
+        Bloque[] filaDeBloques = bloques[fila >> BITS_DE_BLOQUE];
+        if(filaDeBloques == null) {
+            filaDeBloques = new Bloque[bloquesPorFila];
+            bloques[fila >> BITS_DE_BLOQUE] = filaDeBloques;
+        }
+        Bloque bloque = filaDeBloques[columna >> BITS_DE_BLOQUE];
+        if(bloque == null) {
+            bloque = new Bloque();
+            filaDeBloques[columna >> BITS_DE_BLOQUE] = bloque;
+            cantidadDeBloques.incrementAndGet();
+        }
+        int indice = indiceEnBloque(fila, columna);
+        if(bloque.animales[indice] == null) {
+            bloque.ocupadas++;
+        }
+        bloque.animales[indice] = animal;
+        bloque.especies[indice] = (byte) animal.getEspecie();
+    }
+
+    public void vaciar(int fila, int columna)
+    {
+        Bloque[] filaDeBloques = bloques[fila >> BITS_DE_BLOQUE];
+        if(filaDeBloques == null) {
+            return;
+        }
+        Bloque bloque = filaDeBloques[columna >> BITS_DE_BLOQUE];
+        if(bloque == null) {
+            return;
+        }
+        int indice = indiceEnBloque(fila, columna);
+        if(bloque.animales[indice] != null) {
+            bloque.animales[indice] = null;
+            bloque.especies[indice] = Especie.VACIO;
+            bloque.ocupadas--;
+            if(bloque.ocupadas == 0) {
+                // El bloque quedó vacío: se libera.
+                filaDeBloques[columna >> BITS_DE_BLOQUE] = null;
+                cantidadDeBloques.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return La cantidad de bloques que ocupan memoria actualmente.
+     */
+    public int getCantidadDeBloques()
+    {
+        return cantidadDeBloques.get();
+    }
+
+    /**
+     * Las filas de un mismo bloque comparten estado, así que sólo se
+     * puede escribir a la vez en filas de bloques distintos.
+     */
+    public int getFilasPorGrupo()
+    {
+        return LADO_DE_BLOQUE;
+    }
+
+    /**
+     * @return El bloque que contiene a la posición, o null si no existe.
+     */
+    private Bloque getBloque(int fila, int columna)
+    {
+        Bloque[] filaDeBloques = bloques[fila >> BITS_DE_BLOQUE];
+        if(filaDeBloques == null) {
+            return null;
+        }
+        return filaDeBloques[columna >> BITS_DE_BLOQUE];
+    }
+
+    /**
+     * @return El índice de la posición dentro de su bloque.
+     */
+    private static int indiceEnBloque(int fila, int columna)
+    {
+        return ((fila & MASCARA_DE_BLOQUE) << BITS_DE_BLOQUE) | (columna & MASCARA_DE_BLOQUE);
+    }
+
+    /**
+     * Un bloque de LADO_DE_BLOQUE x LADO_DE_BLOQUE posiciones.
+     */
+    private static class Bloque
+    {
+        private final Animal[] animales = new Animal[LADO_DE_BLOQUE * LADO_DE_BLOQUE];
+        private final byte[] especies = new byte[LADO_DE_BLOQUE * LADO_DE_BLOQUE];
+        // Cantidad de posiciones ocupadas del bloque.
+        private int ocupadas;
+    }
+}
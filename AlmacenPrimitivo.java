@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * Almacenamiento del campo en arreglos primitivos ("structure of arrays").
+ * Las posiciones se guardan fila por fila en un único arreglo de enteros;
+ * cada celda contiene el identificador de la entidad que la ocupa junto
+ * con su código de especie, de modo que consultar la especie de una
+ * posición no requiere seguir ninguna referencia. Los identificadores
+ * indexan el arreglo de entidades y, en paralelo, columnas con la edad y
+ * el nivel de comida de cada entidad, copiados al ubicarla; así tampoco
+ * leer ese estado sigue referencias. Los identificadores se reutilizan
+ * al vaciar posiciones.
+ */
+public class AlmacenPrimitivo implements AlmacenDeCampo
+{
+    // Bits de cada celda reservados para el código de especie.
+    private static final int BITS_DE_ESPECIE = 3;
+    private static final int MASCARA_DE_ESPECIE = (1 << BITS_DE_ESPECIE) - 1;
+    // Cada ocupante necesita un identificador que, corrido
+    // BITS_DE_ESPECIE bits, quepa en un entero positivo; como hay a lo
+    // sumo un ocupante por posición, se limita el área.
+    private static final int AREA_MAXIMA = 1 << (31 - BITS_DE_ESPECIE);
+    // Capacidad inicial de los arreglos de entidades.
+    private static final int CAPACIDAD_INICIAL = 64;
+
+    private int ancho;
+    // Una celda por posición: ((identificador + 1) << BITS_DE_ESPECIE) | especie,
+    // o cero si la posición está vacía.
+    private int[] celdas;
+
+    // Ocupante de cada entidad, indexado por identificador.
+    private Animal[] entidades;
+    // Edad y nivel de comida de cada entidad al ubicarla, indexados por
+    // identificador.
+    private int[] edades;
+    private int[] comidas;
+    // Cantidad de identificadores asignados alguna vez.
+    private int cantidadDeEntidades;
+    // Identificadores liberados, listos para reutilizar.
+    private int[] libres;
+    private int cantidadDeLibres;
+
+    /**
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     */
+    public AlmacenPrimitivo(int largo, int ancho)
+    {
+        long area = (long) largo * ancho;
+        if(area > AREA_MAXIMA) {
+            throw new IllegalArgumentException("Campo demasiado grande para un almacenamiento plano: "
+                                               + largo + "x" + ancho + " (máximo " + AREA_MAXIMA
+                                               + " posiciones)");
+        }
+        this.ancho = ancho;
+        celdas = new int[(int) area];
+        entidades = new Animal[CAPACIDAD_INICIAL];
+        edades = new int[CAPACIDAD_INICIAL];
+        comidas = new int[CAPACIDAD_INICIAL];
+        cantidadDeEntidades = 0;
+        libres = new int[CAPACIDAD_INICIAL];
+        cantidadDeLibres = 0;
+    }
+
+    public Animal getAnimalEn(int fila, int columna)
+    {
+        int celda = celdas[fila * ancho + columna];
+        if(celda == 0) {
+            return null;
+        }
+        return entidades[(celda >>> BITS_DE_ESPECIE) - 1];
+    }
+
+    public int getEspecieEn(int fila, int columna)
+    {
+        return celdas[fila * ancho + columna] & MASCARA_DE_ESPECIE;
+    }
+
+    public int getEdadEn(int fila, int columna)
+    {
+        int celda = celdas[fila * ancho + columna];
+        return celda == 0 ? 0 : edades[(celda >>> BITS_DE_ESPECIE) - 1];
+    }
+
+    public int getNivelDeComidaEn(int fila, int columna)
+    {
+        int celda = celdas[fila * ancho + columna];
+        return celda == 0 ? 0 : comidas[(celda >>> BITS_DE_ESPECIE) - 1];
+    }
+
+    public void ubicar(Animal animal, int fila, int columna)
+    {
+        int indice = fila * ancho + columna;
+        int celda = celdas[indice];
+        int id;
+        if(celda == 0) {
+            id = nuevaEntidad();
+        }
+        else {
+            // Reemplaza al ocupante anterior reutilizando su identificador.
+            id = (celda >>> BITS_DE_ESPECIE) - 1;
+        }
+        entidades[id] = animal;
+        edades[id] = animal.getEdad();
+        comidas[id] = animal instanceof Zorro ? ((Zorro) animal).getNivelDeComida() : 0;
+        celdas[indice] = ((id + 1) << BITS_DE_ESPECIE) | animal.getEspecie();
+    }
+
+    public void vaciar(int fila, int columna)
+    {
+        int indice = fila * ancho + columna;
+        int celda = celdas[indice];
+        if(celda != 0) {
+            int id = (celda >>> BITS_DE_ESPECIE) - 1;
+            entidades[id] = null;
+            edades[id] = 0;
+            comidas[id] = 0;
+            celdas[indice] = 0;
+            if(cantidadDeLibres == libres.length) {
+                libres = Arrays.copyOf(libres, libres.length * 2);
+            }
+            libres[cantidadDeLibres++] = id;
+        }
+    }
+
+    /**
+     * Asigna un identificador, reutilizando uno liberado si lo hay y
+     * ampliando los arreglos si hace falta.
+     */
+    private int nuevaEntidad()
+    {
+        if(cantidadDeLibres > 0) {
+            return libres[--cantidadDeLibres];
+        }
+        if(cantidadDeEntidades == entidades.length) {
+            entidades = Arrays.copyOf(entidades, entidades.length * 2);
+            edades = Arrays.copyOf(edades, entidades.length);
+            comidas = Arrays.copyOf(comidas, entidades.length);
+        }
+        return cantidadDeEntidades++;
+    }
+}
@@ -1,3 +1,5 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.List;
 
 /**
@@ -11,6 +13,18 @@ import java.util.List;
  */
 public abstract class Animal
 {
+    // Acceso atómico al campo vive.
+    private static final VarHandle VIVE;
+
+    static {
+        try {
+            VIVE = MethodHandles.lookup().findVarHandle(Animal.class, "vive", boolean.class);
+        }
+        catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     // La edad del animal.
     private int edad;
     // Si el animal está vivo o no.
@@ -38,6 +52,12 @@ public abstract class Animal
     abstract public void act(Campo campoActual, 
                              Campo campoActualizado, List<Animal> nuevosAnimales);
     
+    /**
+     * Devuelve el código de especie del animal.
+     * @return Una de las constantes de Especie.
+     */
+    abstract public int getEspecie();
+
     /**
      * Verifica si el animal esta vivo o no.
      * @return True si el animal sigue vivo.
@@ -54,7 +74,43 @@ public abstract class Animal
     {
         vive = false;
     }
+
+    /**
+     * Mata al animal si todavía está vivo. Es una operación atómica: si
+     * varios hilos intentan matarlo a la vez, sólo uno lo consigue.
+     * @return true si este llamado mató al animal.
+     */
+    public boolean matar()
+    {
+        return VIVE.compareAndSet(this, true, false);
+    }
+
+    /**
+     * Mata al animal por la causa dada y lo anota en el diario de
+     * eventos del campo. Si ya estaba muerto, por ej. porque lo comieron,
+     * no hace nada.
+     * @param campo El campo en el que se registra la muerte.
+     * @param causa Un código de CausaDeEvento.
+     */
+    protected void morir(Campo campo, int causa)
+    {
+        if(matar()) {
+            campo.registrarEvento(causa, this);
+        }
+    }
     
+    /**
+     * Deja al animal como recién nacido: vivo, con edad cero y sin
+     * ubicación. Lo usa ReservaDeAnimales para reciclar animales
+     * muertos; las subclases reinician además su propio estado.
+     */
+    protected void renacer()
+    {
+        edad = 0;
+        ubicacion = null;
+        vive = true;
+    }
+
     /**
      * Devuelve la edad del animal.
      * @return La edad del animal.
@@ -83,7 +139,8 @@ public abstract class Animal
     }
 
     /**
-     * Establece la posicion del animal.
+     * Establece la posicion del animal creando una ubicación nueva.
+     * Campo.getUbicacion devuelve en cambio una ubicación compartida.
      * @param fila La coordenada vertical de la posicion.
      * @param columna La coordenada horizontal de la posicion.
      */
@@ -0,0 +1,86 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * Provee el generador de números aleatorios que usan los animales y el
+ * campo. Cada hilo tiene su propio generador, de modo que los hilos no
+ * compiten por uno compartido, y un motor de simulación puede asignar
+ * a cada tarea un generador con semilla conocida para que el resultado
+ * no dependa de qué hilo ejecuta cada tarea.
+ * Una simulación tiene una sola semilla; de ella se deriva un flujo
+ * para cada paso y cada tarea dentro del paso (ver flujo), por lo que
+ * basta conocer la semilla y el paso para reproducir lo que sigue.
+ */
+public final class Azar
+{
+    // Los hilos que no recibieron un flujo propio usan uno separado de
+    // éste, con semilla al azar.
+    private static final FlujoAleatorio RAIZ = new FlujoAleatorio(System.nanoTime() ^ 0x5DEECE66DL);
+
+    private static final ThreadLocal<RandomGenerator> GENERADOR = ThreadLocal.withInitial(Azar::separarDeLaRaiz);
+
+    private Azar()
+    {
+    }
+
+    /**
+     * @return El generador del hilo actual.
+     */
+    public static RandomGenerator generador()
+    {
+        return GENERADOR.get();
+    }
+
+    /**
+     * Reemplaza el generador del hilo actual.
+     * @param generador El generador a usar desde ahora en este hilo.
+     */
+    public static void usar(RandomGenerator generador)
+    {
+        GENERADOR.set(generador);
+    }
+
+    /**
+     * Crea el flujo de una tarea de un paso.
+     * @param semilla La semilla de la simulación.
+     * @param paso El paso de la simulación.
+     * @param flujo El número de flujo dentro del paso.
+     * @return Un flujo que depende sólo de los tres valores.
+     */
+    public static FlujoAleatorio flujo(long semilla, long paso, long flujo)
+    {
+        return new FlujoAleatorio(derivar(semilla, paso, flujo));
+    }
+
+    /**
+     * @return Una semilla nueva, para simulaciones que no indican una.
+     */
+    public static long semillaNueva()
+    {
+        synchronized(RAIZ) {
+            return RAIZ.nextLong();
+        }
+    }
+
+    private static FlujoAleatorio separarDeLaRaiz()
+    {
+        synchronized(RAIZ) {
+            return RAIZ.separar();
+        }
+    }
+
+    /**
+     * Deriva una semilla independiente para cada combinación de semilla
+     * base, paso y flujo, mezclando los bits como SplitMix64.
+     * @param semilla La semilla de la simulación.
+     * @param paso El paso de la simulación.
+     * @param flujo El número de flujo dentro del paso, por ej. la franja.
+     * @return Una semilla derivada.
+     */
+    public static long derivar(long semilla, long paso, long flujo)
+    {
+        long z = semilla + paso * 0x9E3779B97F4A7C15L + flujo * 0xC2B2AE3D27D4EB4FL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Compara el tiempo por paso del recorrido secuencial por objetos con el
+ * del motor de columnas, sobre una simulación sin visor con la misma
+ * semilla, y muestra una suma de verificación del estado final de cada
+ * uno para comprobar que coinciden.
+ * Uso: java BancoDePruebasColumnas [largo ancho pasos]
+ */
+public class BancoDePruebasColumnas
+{
+    private static final long SEMILLA = 42;
+    // Pasos de calentamiento antes de medir.
+    private static final int PASOS_DE_CALENTAMIENTO = 20;
+
+    public static void main(String[] args)
+    {
+        int largo = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int ancho = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int pasos = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        System.out.println("Campo " + largo + "x" + ancho + ", " + pasos + " pasos");
+        double base = 0;
+        for(boolean columnas : new boolean[] { false, true }) {
+            Simulador simulador = new Simulador(largo, ancho, TipoDeCampo.DENSO, false, SEMILLA);
+            if(columnas) {
+                simulador.usarMotorDeColumnas();
+            }
+            for(int paso = 1; paso <= PASOS_DE_CALENTAMIENTO; paso++) {
+                simulador.simularUnPaso();
+            }
+            long inicio = System.nanoTime();
+            for(int paso = 1; paso <= pasos; paso++) {
+                simulador.simularUnPaso();
+            }
+            double msPorPaso = (System.nanoTime() - inicio) / 1e6 / pasos;
+            if(!columnas) {
+                base = msPorPaso;
+            }
+            // Un paso más sin medir, con el mismo motor, sólo para ver el
+            // estado final.
+            final long[] suma = new long[1];
+            simulador.agregarObservador(new ObservadorDeSimulacion() {
+                public void mostrarEstado(int paso, Campo campo)
+                {
+                    suma[0] = BancoDePruebasParalelo.verificacion(campo);
+                }
+            });
+            simulador.simularUnPaso();
+            simulador.usarMotorSecuencial();
+            System.out.printf("%-10s %8.2f ms/paso  aceleracion %5.2fx  verificacion %016x%n",
+                              columnas ? "columnas:" : "objetos:", msPorPaso, base / msPorPaso, suma[0]);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * Compara en un solo hilo el envejecimiento sin saltos de
+ * MotorDeColumnas con el escrito animal por animal, sobre columnas de
+ * distintos tamaños, y muestra cuántos millones de animales por segundo
+ * procesa cada uno; comprueba además que ambos dan el mismo resultado.
+ * Cada repetición parte de una copia fresca de las columnas iniciales,
+ * así ambos núcleos ven siempre la misma mezcla de edades, hambre y
+ * muertes, y no poblaciones que ya envejecieron en las repeticiones
+ * anteriores. Cada animal ocupa diez bytes de columnas, y hay tres
+ * juegos: con 100 millones hace falta un heap de unos 4 GB (-Xmx4g).
+ * Uso: java BancoDePruebasEnvejecimiento [cantidad ...]
+ */
+public class BancoDePruebasEnvejecimiento
+{
+    private static final long SEMILLA = 42;
+    // Repeticiones de calentamiento y medidas de cada núcleo.
+    private static final int CALENTAMIENTO = 20;
+    private static final int REPETICIONES = 10;
+    // La proporción de zorros entre los animales.
+    private static final double PROPORCION_DE_ZORROS = 0.1;
+    // La proporción de animales muertos durante el paso, que el
+    // envejecimiento debe saltear.
+    private static final double PROPORCION_DE_MUERTOS = 0.05;
+
+    public static void main(String[] args)
+    {
+        int[] cantidades = { 1000000, 10000000 };
+        if(args.length > 0) {
+            cantidades = new int[args.length];
+            for(int i = 0; i < args.length; i++) {
+                cantidades[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for(int cantidad : cantidades) {
+            Columnas iniciales = new Columnas(cantidad);
+            Columnas porAnimal = iniciales.copia();
+            Columnas sinSaltos = iniciales.copia();
+            MotorDeColumnas.envejecerPorAnimal(porAnimal.especie, porAnimal.estado, porAnimal.edad,
+                                               porAnimal.comida, cantidad);
+            MotorDeColumnas.envejecer(sinSaltos.especie, sinSaltos.estado, sinSaltos.edad,
+                                      sinSaltos.comida, cantidad);
+            boolean iguales = porAnimal.esIgualA(sinSaltos);
+
+            double porAnimalPorSegundo = medir(iniciales, porAnimal, false);
+            double sinSaltosPorSegundo = medir(iniciales, sinSaltos, true);
+            System.out.printf("%,12d animales: por animal %8.1f M/s  sin saltos %8.1f M/s  (%5.2fx)  %s%n",
+                              cantidad, porAnimalPorSegundo / 1e6, sinSaltosPorSegundo / 1e6,
+                              sinSaltosPorSegundo / porAnimalPorSegundo,
+                              iguales ? "resultados iguales" : "RESULTADOS DISTINTOS");
+        }
+    }
+
+    /**
+     * Mide un núcleo, restaurando las columnas iniciales antes de cada
+     * repetición; la copia no se cuenta en el tiempo.
+     * @return Animales procesados por segundo, sin contar el calentamiento.
+     */
+    private static double medir(Columnas iniciales, Columnas columnas, boolean sinSaltos)
+    {
+        int cantidad = columnas.especie.length;
+        long total = 0;
+        for(int r = 0; r < CALENTAMIENTO + REPETICIONES; r++) {
+            columnas.restaurar(iniciales);
+            long inicio = System.nanoTime();
+            if(sinSaltos) {
+                MotorDeColumnas.envejecer(columnas.especie, columnas.estado, columnas.edad,
+                                          columnas.comida, cantidad);
+            }
+            else {
+                MotorDeColumnas.envejecerPorAnimal(columnas.especie, columnas.estado, columnas.edad,
+                                                   columnas.comida, cantidad);
+            }
+            if(r >= CALENTAMIENTO) {
+                total += System.nanoTime() - inicio;
+            }
+        }
+        return (double) cantidad * REPETICIONES / (total / 1e9);
+    }
+
+    /**
+     * Columnas de conejos y zorros con edades, niveles de comida y
+     * estados al azar.
+     */
+    private static class Columnas
+    {
+        private byte[] especie;
+        private byte[] estado;
+        private int[] edad;
+        private int[] comida;
+
+        private Columnas(int cantidad)
+        {
+            especie = new byte[cantidad];
+            estado = new byte[cantidad];
+            edad = new int[cantidad];
+            comida = new int[cantidad];
+            FlujoAleatorio rand = Azar.flujo(SEMILLA, 0, cantidad);
+            for(int i = 0; i < cantidad; i++) {
+                boolean zorro = rand.nextDouble() < PROPORCION_DE_ZORROS;
+                especie[i] = (byte) (zorro ? Especie.ZORRO : Especie.CONEJO);
+                estado[i] = rand.nextDouble() < PROPORCION_DE_MUERTOS ? 0 : MotorDeColumnas.VIVO;
+                edad[i] = rand.nextInt(zorro ? Zorro.EDAD_MAX + 1 : Conejo.EDAD_MAX + 1);
+                comida[i] = zorro ? 1 + rand.nextInt(Zorro.VALOR_COMIDA_CONEJO) : 0;
+            }
+        }
+
+        private Columnas()
+        {
+        }
+
+        private Columnas copia()
+        {
+            Columnas copia = new Columnas();
+            copia.especie = especie.clone();
+            copia.estado = estado.clone();
+            copia.edad = edad.clone();
+            copia.comida = comida.clone();
+            return copia;
+        }
+
+        private void restaurar(Columnas iniciales)
+        {
+            System.arraycopy(iniciales.especie, 0, especie, 0, especie.length);
+            System.arraycopy(iniciales.estado, 0, estado, 0, estado.length);
+            System.arraycopy(iniciales.edad, 0, edad, 0, edad.length);
+            System.arraycopy(iniciales.comida, 0, comida, 0, comida.length);
+        }
+
+        private boolean esIgualA(Columnas otras)
+        {
+            return Arrays.equals(especie, otras.especie) && Arrays.equals(estado, otras.estado)
+                   && Arrays.equals(edad, otras.edad) && Arrays.equals(comida, otras.comida);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Mide el tiempo por paso del motor paralelo con 1, 2, 4, 8 y 16 hilos
+ * sobre una simulación sin visor con la misma semilla, y muestra una
+ * suma de verificación del estado final para comprobar que no depende
+ * de la cantidad de hilos.
+ * Uso: java BancoDePruebasParalelo [largo ancho pasos]
+ */
+public class BancoDePruebasParalelo
+{
+    private static final int[] HILOS = { 1, 2, 4, 8, 16 };
+    private static final long SEMILLA = 42;
+    // Pasos de calentamiento antes de medir.
+    private static final int PASOS_DE_CALENTAMIENTO = 20;
+
+    public static void main(String[] args)
+    {
+        int largo = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int ancho = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int pasos = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        System.out.println("Campo " + largo + "x" + ancho + ", " + pasos + " pasos");
+        double base = 0;
+        for(int hilos : HILOS) {
+            Simulador simulador = new Simulador(largo, ancho, TipoDeCampo.DENSO, false, SEMILLA);
+            simulador.usarMotorParalelo(hilos);
+            for(int paso = 1; paso <= PASOS_DE_CALENTAMIENTO; paso++) {
+                simulador.simularUnPaso();
+            }
+            long inicio = System.nanoTime();
+            for(int paso = 1; paso <= pasos; paso++) {
+                simulador.simularUnPaso();
+            }
+            double msPorPaso = (System.nanoTime() - inicio) / 1e6 / pasos;
+            simulador.usarMotorSecuencial();
+            if(hilos == 1) {
+                base = msPorPaso;
+            }
+            // Un paso más sin medir, sólo para ver el estado final.
+            final long[] suma = new long[1];
+            simulador.agregarObservador(new ObservadorDeSimulacion() {
+                public void mostrarEstado(int paso, Campo campo)
+                {
+                    suma[0] = verificacion(campo);
+                }
+            });
+            simulador.simularUnPaso();
+            System.out.printf("%2d hilos: %8.2f ms/paso  aceleracion %5.2fx  verificacion %016x%n",
+                              hilos, msPorPaso, base / msPorPaso, suma[0]);
+        }
+    }
+
+    /**
+     * @return Una suma de verificación del contenido del campo.
+     */
+    static long verificacion(Campo campo)
+    {
+        final long[] suma = { 0 };
+        campo.recorrerOcupadas(new VisitanteDeCeldas() {
+            public void visitar(int fila, int columna, Animal animal)
+            {
+                long valor = Ubicacion.empaquetar(fila, columna) * 31 + animal.getEspecie() * 7 + animal.getEdad();
+                suma[0] += Azar.derivar(valor, 0, 0);
+            }
+        });
+        return suma[0];
+    }
+}
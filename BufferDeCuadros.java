@@ -0,0 +1,124 @@
+/**
+ * Pasa cuadros del hilo de la simulación al hilo que los dibuja, en un
+ * anillo de tres cuadros reservados de antemano: uno que la simulación
+ * llena, uno listo para dibujar y uno que se está dibujando. La
+ * simulación nunca espera al dibujo: si el dibujo se atrasa, el cuadro
+ * listo que nadie tomó se descarta y se reemplaza por el nuevo, así
+ * quien dibuja siempre toma el más reciente.
+ * Hay un solo productor y un solo consumidor.
+ */
+public class BufferDeCuadros
+{
+    private static final int CUADROS = 3;
+    // Indica que ningún cuadro está en ese estado.
+    private static final int NINGUNO = -1;
+
+    private final CuadroDelCampo[] cuadros;
+    // Los índices del cuadro que se llena, el listo y el que se dibuja.
+    private int enLlenado = NINGUNO;
+    private int listo = NINGUNO;
+    private int enDibujo = NINGUNO;
+    // Donde se empieza a buscar el próximo cuadro a llenar.
+    private int siguiente;
+    private long publicados, descartados;
+    private boolean cerrado;
+
+    /**
+     * Crea el anillo para un campo de las dimensiones dadas.
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     */
+    public BufferDeCuadros(int largo, int ancho)
+    {
+        cuadros = new CuadroDelCampo[CUADROS];
+        for(int i = 0; i < CUADROS; i++) {
+            cuadros[i] = new CuadroDelCampo(largo, ancho);
+        }
+    }
+
+    /**
+     * Entrega un cuadro libre para que el productor lo llene; no espera
+     * nunca. Debe seguirle un llamado a publicar.
+     * @return Un cuadro que no está listo ni se está dibujando.
+     */
+    public synchronized CuadroDelCampo obtenerParaLlenar()
+    {
+        for(int k = 0; k < CUADROS; k++) {
+            int i = (siguiente + k) % CUADROS;
+            if(i != listo && i != enDibujo) {
+                enLlenado = i;
+                siguiente = (i + 1) % CUADROS;
+                return cuadros[i];
+            }
+        }
+        // Con tres cuadros siempre hay uno libre.
+        throw new IllegalStateException("Se pidió un cuadro sin publicar el anterior.");
+    }
+
+    /**
+     * Deja listo el cuadro entregado por obtenerParaLlenar, en lugar del
+     * cuadro listo anterior si nadie lo tomó.
+     */
+    public synchronized void publicar()
+    {
+        if(listo != NINGUNO) {
+            descartados++;
+        }
+        listo = enLlenado;
+        enLlenado = NINGUNO;
+        publicados++;
+        notifyAll();
+    }
+
+    /**
+     * Espera un cuadro listo y lo entrega al consumidor. Debe seguirle un
+     * llamado a devolver.
+     * @return El cuadro más reciente, o null si el anillo se cerró.
+     * @throws InterruptedException Si se interrumpe la espera.
+     */
+    public synchronized CuadroDelCampo tomar() throws InterruptedException
+    {
+        while(listo == NINGUNO && !cerrado) {
+            wait();
+        }
+        if(cerrado) {
+            return null;
+        }
+        enDibujo = listo;
+        listo = NINGUNO;
+        return cuadros[enDibujo];
+    }
+
+    /**
+     * Indica que el consumidor terminó de usar el cuadro que tomó.
+     */
+    public synchronized void devolver()
+    {
+        enDibujo = NINGUNO;
+    }
+
+    /**
+     * Despierta al consumidor para que termine.
+     */
+    public synchronized void cerrar()
+    {
+        cerrado = true;
+        notifyAll();
+    }
+
+    /**
+     * @return La cantidad de cuadros publicados.
+     */
+    public synchronized long getPublicados()
+    {
+        return publicados;
+    }
+
+    /**
+     * @return La cantidad de cuadros descartados sin dibujar.
+     */
+    public synchronized long getDescartados()
+    {
+        return descartados;
+    }
+}
@@ -1,8 +1,8 @@
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Representa una malla rectangular de posiciones de campo.
@@ -14,12 +14,34 @@ import java.util.Random;
  */
 public class Campo
 {
-    private static final Random rand = new Random();
-    
     // El largo y el ancho del campo.
     private int largo, ancho;
     // Almacenamiento de los animales.
-    private Animal[][] campo;
+    private AlmacenDeCampo campo;
+    // Columnas de cada fila ocupadas desde la última limpieza, y cuántas
+    // son. Limpiar y recorrer el campo sólo visitan estas posiciones.
+    private int[][] columnasOcupadas;
+    private int[] ocupadasPorFila;
+    // Una única ubicación inmutable por posición, creada a medida que se
+    // usa. Las filas se reservan la primera vez que se pide una de sus
+    // posiciones.
+    private Ubicacion[][] ubicaciones;
+    // Donde se anotan los nacimientos y muertes, o null.
+    private DiarioDeEventos diario;
+    // Donde se cuentan los nacimientos y muertes, o null.
+    private ContadorDeEventos contador;
+    // De donde salen los recién nacidos, o null para crearlos.
+    private ReservaDeAnimales reserva;
+    // La hierba, que ocupa posiciones sin estar en el almacenamiento, o
+    // null.
+    private Hierba hierba;
+    // El índice para contar especies por región, o null.
+    private IndiceDeDensidad indice;
+    // Cuántas posiciones ocupa cada especie, indexado por código de
+    // especie. Se actualizan al ubicar y al limpiar, y como en un paso
+    // en paralelo varios hilos ubican a la vez, cada contador está
+    // repartido en celdas que se suman al consultarlo.
+    private final LongAdder[] cantidades;
 
     /**
      * Representa un campo de las dimensiones dadas.
@@ -27,23 +49,149 @@ public class Campo
      * @param ancho El ancho del campo.
      */
     public Campo(int largo, int ancho)
+    {
+        this(largo, ancho, new AlmacenDenso(largo, ancho));
+    }
+
+    /**
+     * Representa un campo de las dimensiones dadas que guarda su
+     * contenido en el almacenamiento indicado.
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     * @param almacen El almacenamiento de las posiciones, de las
+     *                mismas dimensiones que el campo.
+     */
+    public Campo(int largo, int ancho, AlmacenDeCampo almacen)
     {
         this.largo = largo;
         this.ancho = ancho;
-        campo = new Animal[largo][ancho];
+        campo = almacen;
+        ubicaciones = new Ubicacion[largo][];
+        columnasOcupadas = new int[largo][];
+        ocupadasPorFila = new int[largo];
+        cantidades = new LongAdder[Especie.CANTIDAD];
+        for(int especie = 0; especie < Especie.CANTIDAD; especie++) {
+            cantidades[especie] = new LongAdder();
+        }
     }
     
     /**
-     * Limpiar el campo.
+     * Limpiar el campo. Sólo se vacían las posiciones ocupadas, por lo
+     * que el costo depende de la población y no del área.
      */
     public void limpiar()
     {
         for(int fila = 0; fila < largo; fila++) {
-            for(int columna = 0; columna < ancho; columna++) {
-                campo[fila][columna] = null;
+            int ocupadas = ocupadasPorFila[fila];
+            if(ocupadas > 0) {
+                int[] columnas = columnasOcupadas[fila];
+                for(int i = 0; i < ocupadas; i++) {
+                    campo.vaciar(fila, columnas[i]);
+                }
+                ocupadasPorFila[fila] = 0;
+            }
+        }
+        reiniciarCantidades();
+    }
+
+    /**
+     * Indica que el contenido actual del campo es el estado completo
+     * del paso dado, para los almacenamientos que lo conservan.
+     * @param paso El paso de la simulación.
+     */
+    public void sellar(int paso)
+    {
+        campo.sellar(paso);
+        if(indice != null) {
+            indice.invalidar();
+        }
+    }
+
+    /**
+     * Recorre las posiciones ocupadas del campo, fila por fila.
+     * @param visitante Recibe cada posición ocupada y su ocupante.
+     */
+    public void recorrerOcupadas(VisitanteDeCeldas visitante)
+    {
+        for(int fila = 0; fila < largo; fila++) {
+            int ocupadas = ocupadasPorFila[fila];
+            int[] columnas = columnasOcupadas[fila];
+            for(int i = 0; i < ocupadas; i++) {
+                int columna = columnas[i];
+                visitante.visitar(fila, columna, campo.getAnimalEn(fila, columna));
             }
         }
     }
+
+    /**
+     * Devuelve cuántas posiciones ocupa una especie, sin recorrer el
+     * campo. Cuenta también a los ocupantes que murieron durante el paso
+     * y siguen en su posición. No debe llamarse mientras otros hilos
+     * ubican animales.
+     * @param especie Un código de especie.
+     * @return La cantidad de posiciones ocupadas por esa especie; para
+     *         Especie.HIERBA, la cantidad de posiciones con hierba.
+     */
+    public int getCantidad(int especie)
+    {
+        if(especie == Especie.HIERBA) {
+            return hierba != null ? hierba.getCantidad() : 0;
+        }
+        return (int) cantidades[especie].sum();
+    }
+
+    /**
+     * Cuenta las posiciones de una especie en un rectángulo del campo.
+     * Con un índice de densidad no recorre el rectángulo, y refleja el
+     * estado del último sellado; sin índice recorre cada posición.
+     * @param especie Un código de especie distinto de Especie.VACIO.
+     * @param fila La primera fila del rectángulo.
+     * @param columna La primera columna del rectángulo.
+     * @param filas La cantidad de filas del rectángulo.
+     * @param columnas La cantidad de columnas del rectángulo.
+     * @return La cantidad de posiciones de la especie en el rectángulo,
+     *         como las informa getEspecieEn.
+     */
+    public long contarEnRegion(int especie, int fila, int columna, int filas, int columnas)
+    {
+        if(indice != null) {
+            return indice.contar(this, especie, fila, columna, filas, columnas);
+        }
+        IndiceDeDensidad.validarRegion(largo, ancho, fila, columna, filas, columnas);
+        return IndiceDeDensidad.contarCeldas(this, especie, fila, columna, fila + filas, columna + columnas);
+    }
+
+    /**
+     * Suma a la cantidad de una especie; para los campos que ubican
+     * animales sin pasar por ubicar.
+     */
+    protected void sumarCantidad(int especie, int cantidad)
+    {
+        cantidades[especie].add(cantidad);
+    }
+
+    /**
+     * Pone en cero las cantidades de todas las especies; para los campos
+     * que se limpian sin pasar por limpiar.
+     */
+    protected void reiniciarCantidades()
+    {
+        for(LongAdder cantidad : cantidades) {
+            cantidad.reset();
+        }
+    }
+
+    /**
+     * @return La cantidad de posiciones ocupadas.
+     */
+    public int getCantidadDeOcupadas()
+    {
+        int cantidad = 0;
+        for(int fila = 0; fila < largo; fila++) {
+            cantidad += ocupadasPorFila[fila];
+        }
+        return cantidad;
+    }
     
     /**
      * Coloca un animal en una posición dada.
@@ -53,7 +201,36 @@ public class Campo
     public void ubicar(Animal animal)
     {
         Ubicacion ubicacion = animal.getUbicacion();
-        campo[ubicacion.getFila()][ubicacion.getColumna()] = animal;
+        int fila = ubicacion.getFila();
+        int columna = ubicacion.getColumna();
+        int anterior = campo.getEspecieEn(fila, columna);
+        if(anterior == Especie.VACIO) {
+            registrarOcupada(fila, columna);
+        }
+        else {
+            cantidades[anterior].decrement();
+        }
+        campo.ubicar(animal, fila, columna);
+        cantidades[animal.getEspecie()].increment();
+    }
+
+    /**
+     * Anota que una posición vacía pasó a estar ocupada.
+     */
+    private void registrarOcupada(int fila, int columna)
+    {
+        int[] columnas = columnasOcupadas[fila];
+        int ocupadas = ocupadasPorFila[fila];
+        if(columnas == null) {
+            columnas = new int[Math.min(ancho, 8)];
+            columnasOcupadas[fila] = columnas;
+        }
+        else if(ocupadas == columnas.length) {
+            columnas = Arrays.copyOf(columnas, Math.min(ancho, ocupadas * 2));
+            columnasOcupadas[fila] = columnas;
+        }
+        columnas[ocupadas] = columna;
+        ocupadasPorFila[fila] = ocupadas + 1;
     }
     
     /**
@@ -74,7 +251,88 @@ public class Campo
      */
     public Animal getAnimalEn(int fila, int columna)
     {
-        return campo[fila][columna];
+        return campo.getAnimalEn(fila, columna);
+    }
+
+    /**
+     * Devuelve el código de especie del ocupante de la posicion dada.
+     * @param fila La fila deseada.
+     * @param columna La columna deseada.
+     * @return El código de especie del animal, Especie.HIERBA si no hay
+     *         un animal pero hay hierba, o Especie.VACIO.
+     */
+    public int getEspecieEn(int fila, int columna)
+    {
+        int especie = campo.getEspecieEn(fila, columna);
+        if(especie == Especie.VACIO && hayHierba(fila, columna)) {
+            return Especie.HIERBA;
+        }
+        return especie;
+    }
+
+    /**
+     * Devuelve la edad del ocupante de la posicion dada, tal como era al
+     * ubicarlo.
+     * @param fila La fila deseada.
+     * @param columna La columna deseada.
+     * @return La edad del animal, o 0 si no hay uno.
+     */
+    public int getEdadEn(int fila, int columna)
+    {
+        return campo.getEdadEn(fila, columna);
+    }
+
+    /**
+     * Devuelve el nivel de comida del ocupante de la posicion dada, tal
+     * como era al ubicarlo.
+     * @param fila La fila deseada.
+     * @param columna La columna deseada.
+     * @return El nivel de comida si el ocupante es un zorro, o 0.
+     */
+    public int getNivelDeComidaEn(int fila, int columna)
+    {
+        return campo.getNivelDeComidaEn(fila, columna);
+    }
+
+    /**
+     * @return true si hay hierba en la posicion dada.
+     */
+    public boolean hayHierba(int fila, int columna)
+    {
+        return hierba != null && hierba.hayHierba(fila, columna);
+    }
+
+    /**
+     * Devuelve la ubicación canónica de una posición. Las ubicaciones
+     * son inmutables, así que los animales pueden compartirlas en lugar
+     * de crear una nueva en cada movimiento. Si dos hilos piden a la vez
+     * una posición nueva pueden obtener objetos distintos, pero iguales.
+     * @param fila La fila deseada.
+     * @param columna La columna deseada.
+     * @return La ubicación de la posición.
+     */
+    public Ubicacion getUbicacion(int fila, int columna)
+    {
+        Ubicacion[] filaDeUbicaciones = ubicaciones[fila];
+        if(filaDeUbicaciones == null) {
+            filaDeUbicaciones = new Ubicacion[ancho];
+            ubicaciones[fila] = filaDeUbicaciones;
+        }
+        Ubicacion ubicacion = filaDeUbicaciones[columna];
+        if(ubicacion == null) {
+            ubicacion = new Ubicacion(fila, columna);
+            filaDeUbicaciones[columna] = ubicacion;
+        }
+        return ubicacion;
+    }
+
+    /**
+     * @param empaquetada Una posición empaquetada con Ubicacion.empaquetar.
+     * @return La ubicación canónica de la posición.
+     */
+    public Ubicacion getUbicacion(long empaquetada)
+    {
+        return getUbicacion(Ubicacion.filaDe(empaquetada), Ubicacion.columnaDe(empaquetada));
     }
     
     /**
@@ -90,15 +348,17 @@ public class Campo
     {
         int fila = ubicacion.getFila();
         int columna = ubicacion.getColumna();
-        // Genera un desplazamiento de -1, 0, o +1 para la fila y columna dadas.
-        int filaSiguiente = fila + rand.nextInt(3) - 1;
-        int columnaSiguiente = columna + rand.nextInt(3) - 1;
+        // Genera un desplazamiento de -1, 0, o +1 para la fila y columna
+        // dadas, con un solo valor aleatorio para ambas.
+        int desplazamiento = Azar.generador().nextInt(9);
+        int filaSiguiente = fila + desplazamiento / 3 - 1;
+        int columnaSiguiente = columna + desplazamiento % 3 - 1;
         // Verifica si la nueva posicion esta fuera de los limites.
         if(filaSiguiente < 0 || filaSiguiente >= largo || columnaSiguiente < 0 || columnaSiguiente >= ancho) {
             return ubicacion;
         }
         else if(filaSiguiente != fila || columnaSiguiente != columna) {
-            return new Ubicacion(filaSiguiente, columnaSiguiente);
+            return getUbicacion(filaSiguiente, columnaSiguiente);
         }
         else {
             return ubicacion;
@@ -118,48 +378,253 @@ public class Campo
      */
     public Ubicacion direccionAdyacenteLibre(Ubicacion ubicacion)
     {
-        Iterator<Ubicacion> adyacente = direccionesAdyacentes(ubicacion);
-        while(adyacente.hasNext()) {
-            Ubicacion siguiente = adyacente.next();
-            if(campo[siguiente.getFila()][siguiente.getColumna()] == null) {
-                return siguiente;
+        long libre = direccionAdyacenteLibre(ubicacion.getFila(), ubicacion.getColumna());
+        if(libre == Ubicacion.NINGUNA) {
+            return null;
+        }
+        else if(libre == ubicacion.empaquetada()) {
+            return ubicacion;
+        }
+        else {
+            return getUbicacion(libre);
+        }
+    }
+
+    /**
+     * Igual que direccionAdyacenteLibre(Ubicacion), pero trabaja con
+     * posiciones empaquetadas y no crea objetos.
+     * @param fila La fila de la posicion actual.
+     * @param columna La columna de la posicion actual.
+     * @return La posicion libre empaquetada, o Ubicacion.NINGUNA si
+     *         todas las posiciones alrededor estan ocupadas.
+     */
+    public long direccionAdyacenteLibre(int fila, int columna)
+    {
+        int mascara = Vecindad.mascara(fila, columna, largo, ancho);
+        int ordenacion = Azar.generador().nextInt(Vecindad.ORDENACIONES);
+        for(int k = 0; k < Vecindad.DIRECCIONES; k++) {
+            int direccion = Vecindad.direccion(ordenacion, k);
+            if((mascara & (1 << direccion)) != 0) {
+                int filaSiguiente = fila + Vecindad.deltaFila(direccion);
+                int columnaSiguiente = columna + Vecindad.deltaColumna(direccion);
+                if(estaLibre(filaSiguiente, columnaSiguiente)) {
+                    return Ubicacion.empaquetar(filaSiguiente, columnaSiguiente);
+                }
             }
         }
         // Verifica si la posicion actual esta libre
-        if(campo[ubicacion.getFila()][ubicacion.getColumna()] == null) {
-            return ubicacion;
+        if(estaLibre(fila, columna)) {
+            return Ubicacion.empaquetar(fila, columna);
         } 
         else {
-            return null;
+            return Ubicacion.NINGUNA;
+        }
+    }
+
+    /**
+     * @return true si la posicion no tiene animal ni hierba.
+     */
+    private boolean estaLibre(int fila, int columna)
+    {
+        return campo.getEspecieEn(fila, columna) == Especie.VACIO && !hayHierba(fila, columna);
+    }
+
+    /**
+     * Traslada un animal a una posicion libre adyacente a la suya o, si
+     * no hay ninguna, a su propia posicion si esta libre, y lo ubica alli.
+     * @param animal El animal a trasladar.
+     * @return true si el animal quedo ubicado; false si todas las
+     *         posiciones estaban ocupadas.
+     */
+    public boolean trasladarAAdyacenteLibre(Animal animal)
+    {
+        Ubicacion libre = direccionAdyacenteLibre(animal.getUbicacion());
+        if(libre == null) {
+            return false;
         }
+        animal.setUbicacion(libre);
+        ubicar(animal);
+        return true;
+    }
+
+    /**
+     * Recorre en orden aleatorio las posiciones adyacentes a la dada,
+     * sin crear objetos. No incluye a la posicion dada y todas las
+     * posiciones visitadas estan dentro de la malla.
+     * @param fila La fila de la posicion.
+     * @param columna La columna de la posicion.
+     * @param visitante Recibe cada posicion adyacente y decide si el
+     *                  recorrido termina.
+     * @return true si el visitante termino el recorrido antes de agotar
+     *         las posiciones adyacentes.
+     */
+    public boolean recorrerAdyacentes(int fila, int columna, VisitanteDeAdyacentes visitante)
+    {
+        int mascara = Vecindad.mascara(fila, columna, largo, ancho);
+        int ordenacion = Azar.generador().nextInt(Vecindad.ORDENACIONES);
+        for(int k = 0; k < Vecindad.DIRECCIONES; k++) {
+            int direccion = Vecindad.direccion(ordenacion, k);
+            if((mascara & (1 << direccion)) != 0
+                    && visitante.visitar(fila + Vecindad.deltaFila(direccion),
+                                         columna + Vecindad.deltaColumna(direccion))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Genera un iterador sobre una lista mezclada ("shuffled") de
      * posiciones adyacentes a la dada. Esta lista no contiene a la
      * posicion dada. Todas las posiciones estan dentro de la malla.
+     * Se conserva por compatibilidad; recorrerAdyacentes hace lo mismo
+     * sin crear objetos.
      * @param posicion La posicion para la que se generan las adyacencias.
      * @return Un iterador sobre las posiciones adyacentes a la dada.
      */
     public Iterator<Ubicacion> direccionesAdyacentes(Ubicacion ubicacion)
     {
-        int fila = ubicacion.getFila();
-        int columna = ubicacion.getColumna();
-        List<Ubicacion> ubicaciones = new LinkedList<Ubicacion>();
-        for(int deltaFila = -1; deltaFila <= 1; deltaFila++) {
-            int filaSiguiente = fila + deltaFila;
-            if(filaSiguiente >= 0 && filaSiguiente < largo) {
-                for(int deltaColumna = -1; deltaColumna <= 1; deltaColumna++) {
-                    int columnaSiguiente = columna + deltaColumna;
-                    // Excluye posiciones no validas y la posicion original.
-                    if(columnaSiguiente >= 0 && columnaSiguiente < ancho && (deltaFila != 0 || deltaColumna != 0)) {
-                        ubicaciones.add(new Ubicacion(filaSiguiente, columnaSiguiente));
-                    }
-                }
+        final List<Ubicacion> adyacentes = new ArrayList<Ubicacion>(Vecindad.DIRECCIONES);
+        recorrerAdyacentes(ubicacion.getFila(), ubicacion.getColumna(), new VisitanteDeAdyacentes() {
+            public boolean visitar(int fila, int columna)
+            {
+                adyacentes.add(getUbicacion(fila, columna));
+                return false;
             }
+        });
+        return adyacentes.iterator();
+    }
+
+    /**
+     * Indica en qué filas se puede escribir desde varios hilos a la vez.
+     * @return La cantidad de filas consecutivas por grupo (dos hilos pueden
+     *         escribir a la vez en grupos distintos), o 0 si el campo no
+     *         admite escrituras concurrentes.
+     */
+    public int getFilasPorGrupo()
+    {
+        return campo.getFilasPorGrupo();
+    }
+
+    /**
+     * Establece el diario en el que se anotan los nacimientos y muertes
+     * que ocurren en este campo.
+     * @param diario El diario, o null para no anotarlos.
+     */
+    public void setDiario(DiarioDeEventos diario)
+    {
+        this.diario = diario;
+    }
+
+    /**
+     * Establece dónde se cuentan los nacimientos y muertes que ocurren
+     * en este campo.
+     * @param contador El contador, o null para no contarlos.
+     */
+    public void setContadorDeEventos(ContadorDeEventos contador)
+    {
+        this.contador = contador;
+    }
+
+    /**
+     * Anota un evento en el diario del campo y lo cuenta en su contador de
+     * eventos, si los tiene.
+     * @param causa Un código de CausaDeEvento.
+     * @param animal El animal que nació o murió, en su ubicación actual.
+     */
+    public void registrarEvento(int causa, Animal animal)
+    {
+        if(diario != null) {
+            Ubicacion ubicacion = animal.getUbicacion();
+            diario.registrar(causa, animal.getEspecie(), ubicacion.getFila(), ubicacion.getColumna());
+        }
+        if(contador != null) {
+            contador.contar(causa);
+        }
+    }
+
+    /**
+     * Anota un evento en el diario del campo y lo cuenta en su contador de
+     * eventos, si los tiene.
+     * @param causa Un código de CausaDeEvento.
+     * @param especie El código de especie del animal.
+     * @param fila La fila donde ocurrió.
+     * @param columna La columna donde ocurrió.
+     */
+    public void registrarEvento(int causa, int especie, int fila, int columna)
+    {
+        if(diario != null) {
+            diario.registrar(causa, especie, fila, columna);
+        }
+        if(contador != null) {
+            contador.contar(causa);
         }
-        Collections.shuffle(ubicaciones, rand);
-        return ubicaciones.iterator();
+    }
+
+    /**
+     * Establece la reserva de la que salen los animales que nacen en
+     * este campo.
+     * @param reserva La reserva, o null para crear animales nuevos.
+     */
+    public void setReserva(ReservaDeAnimales reserva)
+    {
+        this.reserva = reserva;
+    }
+
+    /**
+     * Establece la hierba del campo; los animales no se trasladan a las
+     * posiciones que tienen hierba.
+     * @param hierba La hierba, o null si el campo no tiene.
+     */
+    public void setHierba(Hierba hierba)
+    {
+        this.hierba = hierba;
+    }
+
+    /**
+     * @return La hierba del campo, o null si no tiene.
+     */
+    public Hierba getHierba()
+    {
+        return hierba;
+    }
+
+    /**
+     * Establece el índice con el que se cuentan las especies por región.
+     * Se reconstruye al consultarlo después de cada sellado; sin índice
+     * el campo no hace ningún trabajo extra.
+     * @param indice El índice, de las dimensiones del campo, o null.
+     */
+    public void setIndiceDeDensidad(IndiceDeDensidad indice)
+    {
+        this.indice = indice;
+        if(indice != null) {
+            indice.invalidar();
+        }
+    }
+
+    /**
+     * @return El índice de densidad del campo, o null si no tiene.
+     */
+    public IndiceDeDensidad getIndiceDeDensidad()
+    {
+        return indice;
+    }
+
+    /**
+     * @return Un conejo recién nacido, de la reserva si el campo tiene una.
+     */
+    public Conejo nuevoConejo()
+    {
+        return reserva != null ? reserva.obtenerConejo() : new Conejo(false);
+    }
+
+    /**
+     * @return Un zorro recién nacido, de la reserva si el campo tiene una.
+     */
+    public Zorro nuevoZorro()
+    {
+        return reserva != null ? reserva.obtenerZorro() : new Zorro(false);
     }
 
     /**
@@ -0,0 +1,219 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Un campo en el que varios hilos pueden ubicar animales a la vez sin
+ * usar bloqueos. Un animal que se traslada reclama la posición de
+ * destino con una operación atómica compare-and-set; si otro hilo la
+ * reclamó primero, prueba con la siguiente posición adyacente de su
+ * orden aleatorio. Así cualquier partición de la lista de animales
+ * puede actuar en paralelo, sin franjas fijas.
+ * Las posiciones ocupadas se anotan en una lista común cuyo tamaño se
+ * incrementa atómicamente; cada posición se anota sólo una vez, por el
+ * hilo que la encontró vacía.
+ */
+public class CampoConcurrente extends Campo
+{
+    // Acceso atómico a los elementos de un arreglo de animales.
+    private static final VarHandle CELDA = MethodHandles.arrayElementVarHandle(Animal[].class);
+
+    private int largo, ancho;
+    // Los ocupantes, fila por fila.
+    private Animal[] celdas;
+    // Índices de las posiciones ocupadas desde la última limpieza.
+    private int[] ocupadas;
+    private AtomicInteger cantidadDeOcupadas;
+
+    /**
+     * Representa un campo concurrente de las dimensiones dadas.
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     */
+    public CampoConcurrente(int largo, int ancho)
+    {
+        this(largo, ancho, new Animal[verificarArea(largo, ancho)]);
+    }
+
+    private CampoConcurrente(int largo, int ancho, Animal[] celdas)
+    {
+        super(largo, ancho, new Celdas(celdas, ancho));
+        this.largo = largo;
+        this.ancho = ancho;
+        this.celdas = celdas;
+        ocupadas = new int[celdas.length];
+        cantidadDeOcupadas = new AtomicInteger();
+    }
+
+    /**
+     * Limpiar el campo. No debe llamarse mientras otros hilos lo usan.
+     */
+    public void limpiar()
+    {
+        int cantidad = cantidadDeOcupadas.get();
+        for(int i = 0; i < cantidad; i++) {
+            celdas[ocupadas[i]] = null;
+        }
+        cantidadDeOcupadas.set(0);
+        reiniciarCantidades();
+    }
+
+    /**
+     * Coloca un animal en una posición dada, de forma atómica.
+     * Si ya existe un animal en esa posición, se perderá.
+     * @param animal El animal a ubicar.
+     */
+    public void ubicar(Animal animal)
+    {
+        Ubicacion ubicacion = animal.getUbicacion();
+        int indice = ubicacion.getFila() * ancho + ubicacion.getColumna();
+        Animal anterior = (Animal) CELDA.getAndSet(celdas, indice, animal);
+        if(anterior == null) {
+            registrarOcupada(indice);
+        }
+        else {
+            sumarCantidad(anterior.getEspecie(), -1);
+        }
+        sumarCantidad(animal.getEspecie(), 1);
+    }
+
+    /**
+     * Traslada un animal a una posicion libre adyacente a la suya o, si
+     * no hay ninguna, a su propia posicion si esta libre. Cada posicion
+     * se reclama de forma atómica; si otro hilo la ocupa antes, se
+     * prueba con la siguiente.
+     * @param animal El animal a trasladar.
+     * @return true si el animal quedo ubicado; false si todas las
+     *         posiciones estaban ocupadas.
+     */
+    public boolean trasladarAAdyacenteLibre(Animal animal)
+    {
+        Ubicacion ubicacion = animal.getUbicacion();
+        int fila = ubicacion.getFila();
+        int columna = ubicacion.getColumna();
+        int mascara = Vecindad.mascara(fila, columna, largo, ancho);
+        int ordenacion = Azar.generador().nextInt(Vecindad.ORDENACIONES);
+        for(int k = 0; k < Vecindad.DIRECCIONES; k++) {
+            int direccion = Vecindad.direccion(ordenacion, k);
+            if((mascara & (1 << direccion)) != 0) {
+                int filaSiguiente = fila + Vecindad.deltaFila(direccion);
+                int columnaSiguiente = columna + Vecindad.deltaColumna(direccion);
+                if(reclamar(filaSiguiente * ancho + columnaSiguiente, animal)) {
+                    animal.setUbicacion(getUbicacion(filaSiguiente, columnaSiguiente));
+                    return true;
+                }
+            }
+        }
+        // Intenta quedarse en la posicion actual.
+        return reclamar(fila * ancho + columna, animal);
+    }
+
+    /**
+     * Recorre las posiciones ocupadas del campo, en el orden en que se
+     * ocuparon. No debe llamarse mientras otros hilos lo modifican.
+     * @param visitante Recibe cada posición ocupada y su ocupante.
+     */
+    public void recorrerOcupadas(VisitanteDeCeldas visitante)
+    {
+        int cantidad = cantidadDeOcupadas.get();
+        for(int i = 0; i < cantidad; i++) {
+            int indice = ocupadas[i];
+            visitante.visitar(indice / ancho, indice % ancho, celdas[indice]);
+        }
+    }
+
+    /**
+     * @return La cantidad de posiciones ocupadas.
+     */
+    public int getCantidadDeOcupadas()
+    {
+        return cantidadDeOcupadas.get();
+    }
+
+    /**
+     * Cualquier par de filas se puede escribir a la vez.
+     */
+    public int getFilasPorGrupo()
+    {
+        return 1;
+    }
+
+    /**
+     * Ocupa una posición si está vacía y sin hierba.
+     * @return true si este llamado ocupó la posición.
+     */
+    private boolean reclamar(int indice, Animal animal)
+    {
+        Hierba hierba = getHierba();
+        if(CELDA.getAcquire(celdas, indice) == null && (hierba == null || !hierba.hayHierba(indice))
+                && CELDA.compareAndSet(celdas, indice, null, animal)) {
+            registrarOcupada(indice);
+            sumarCantidad(animal.getEspecie(), 1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Anota que una posición vacía pasó a estar ocupada.
+     */
+    private void registrarOcupada(int indice)
+    {
+        ocupadas[cantidadDeOcupadas.getAndIncrement()] = indice;
+    }
+
+    /**
+     * @return El área del campo, si cabe en un arreglo.
+     */
+    private static int verificarArea(int largo, int ancho)
+    {
+        long area = (long) largo * ancho;
+        if(area > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Campo demasiado grande para un campo concurrente: "
+                                               + largo + "x" + ancho);
+        }
+        return (int) area;
+    }
+
+    /**
+     * Lectura de las posiciones del campo concurrente. Las escrituras
+     * las hace directamente CampoConcurrente.
+     */
+    private static class Celdas implements AlmacenDeCampo
+    {
+        private final Animal[] celdas;
+        private final int ancho;
+
+        private Celdas(Animal[] celdas, int ancho)
+        {
+            this.celdas = celdas;
+            this.ancho = ancho;
+        }
+
+        public Animal getAnimalEn(int fila, int columna)
+        {
+            return (Animal) CELDA.getAcquire(celdas, fila * ancho + columna);
+        }
+
+        public int getEspecieEn(int fila, int columna)
+        {
+            Animal animal = getAnimalEn(fila, columna);
+            return animal == null ? Especie.VACIO : animal.getEspecie();
+        }
+
+        public void ubicar(Animal animal, int fila, int columna)
+        {
+            CELDA.setRelease(celdas, fila * ancho + columna, animal);
+        }
+
+        public void vaciar(int fila, int columna)
+        {
+            CELDA.setRelease(celdas, fila * ancho + columna, null);
+        }
+
+        public int getFilasPorGrupo()
+        {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Códigos de los eventos que registra el diario de eventos: un
+ * nacimiento o la causa de una muerte.
+ */
+public final class CausaDeEvento
+{
+    public static final int NACIMIENTO = 0;
+    public static final int VEJEZ = 1;
+    public static final int HAMBRE = 2;
+    // Murió por no tener ninguna posición libre a la que moverse.
+    public static final int SUPERPOBLACION = 3;
+    // Un conejo comido por un zorro.
+    public static final int DEPREDACION = 4;
+    // Cantidad de códigos definidos.
+    public static final int CANTIDAD = 5;
+
+    private static final String[] NOMBRES = { "Nacimiento", "Vejez", "Hambre", "Superpoblacion", "Depredacion" };
+
+    private CausaDeEvento()
+    {
+    }
+
+    /**
+     * @param causa Un código de causa.
+     * @return El nombre de la causa.
+     */
+    public static String getNombre(int causa)
+    {
+        return NOMBRES[causa];
+    }
+}
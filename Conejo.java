@@ -1,5 +1,5 @@
 import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 /**
  * Un modelo sencillo de conejo.
@@ -12,17 +12,16 @@ import java.util.Random;
 public class Conejo extends Animal
 {
     // Características compartidas por todos los conejos (campos estáticos).
+    // MotorDeColumnas aplica las mismas reglas con estos valores.
 
     // La edad en que un conejo comienza a reproducirse
-    private static final int EDAD_DE_REPRODUCCION = 5;
+    static final int EDAD_DE_REPRODUCCION = 5;
     // La edad que puede vivir un conejo.
-    private static final int EDAD_MAX = 50;
+    static final int EDAD_MAX = 50;
     // La probabilidad de reproducción de un conejo.
-    private static final double PROBABILIDAD_DE_REPRODUCCION = 0.15;
+    static final double PROBABILIDAD_DE_REPRODUCCION = 0.15;
     // El número máximo de nacimientos.
-    private static final int MAXIMO_TAMANIO_DE_CAMADA = 5;
-    // Un número aleatorio para controlar la reproducción.
-    private static final Random rand = new Random();
+    static final int MAXIMO_TAMANIO_DE_CAMADA = 5;
     
     // Características individuales (campos de instancia).
 
@@ -36,7 +35,7 @@ public class Conejo extends Animal
     {
         super();
         if(edadPorAzar) {
-            setEdad(rand.nextInt(EDAD_MAX));
+            setEdad(Azar.generador().nextInt(EDAD_MAX));
         }
     }
     
@@ -50,26 +49,22 @@ public class Conejo extends Animal
      */
     public void act(Campo campoActual, Campo campoActualizado, List<Animal> nuevosAnimales)
     {
-        incrementarEdad();
+        incrementarEdad(campoActualizado);
         if(estaVivo()) {
             int nacimientos = reproducir();
             for(int n = 0; n < nacimientos; n++) {
-                Conejo nuevoConejo = new Conejo(false);
+                Conejo nuevoConejo = campoActualizado.nuevoConejo();
                 nuevosAnimales.add(nuevoConejo);
                 nuevoConejo.setUbicacion(
                         campoActualizado.direccionAdyacentePorAzar(getUbicacion()));
                 campoActualizado.ubicar(nuevoConejo);
+                campoActualizado.registrarEvento(CausaDeEvento.NACIMIENTO, nuevoConejo);
             }
-            Ubicacion nuevaUbicacion = campoActualizado.direccionAdyacenteLibre(getUbicacion());
-            // Sólo se traslada al campo actualizado si la ubicación esta libre.
-            if(nuevaUbicacion != null) {
-                setUbicacion(nuevaUbicacion);
-                campoActualizado.ubicar(this);
-            }
-            else {
+            // Sólo se traslada al campo actualizado si hay una ubicación libre.
+            if(!campoActualizado.trasladarAAdyacenteLibre(this)) {
                 // no se puede mover ni estar, superpoblación, todas las
                 // direcciones están ocupadas
-                setMuerto();
+                morir(campoActualizado, CausaDeEvento.SUPERPOBLACION);
             }
 
         }
@@ -78,12 +73,13 @@ public class Conejo extends Animal
     /**
      * Aumenta la edad.
      * Podría dar por resultado la muerte del conejo.
+     * @param campo El campo en el que se registra la muerte.
      */
-    private void incrementarEdad()
+    private void incrementarEdad(Campo campo)
     {
         setEdad(getEdad() + 1);
         if(getEdad() > EDAD_MAX) {
-            setMuerto();
+            morir(campo, CausaDeEvento.VEJEZ);
         }
     }
     
@@ -94,6 +90,7 @@ public class Conejo extends Animal
      */
     private int reproducir()
     {
+        RandomGenerator rand = Azar.generador();
         int nacimientos = 0;
         if(sePuedeReproducir() && rand.nextDouble() <= PROBABILIDAD_DE_REPRODUCCION) {
             nacimientos = rand.nextInt(MAXIMO_TAMANIO_DE_CAMADA) + 1;
@@ -101,6 +98,14 @@ public class Conejo extends Animal
         return nacimientos;
     }
     
+    /**
+     * @return El código de especie del conejo.
+     */
+    public int getEspecie()
+    {
+        return Especie.CONEJO;
+    }
+
     /**
      * @return Un texto que representa al conejo.
      */
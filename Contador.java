@@ -51,6 +51,15 @@ public class Contador
         cantidad++;
     }
     
+    /**
+     * Incrementar la cantidad en la cantidad dada.
+     * @param cantidad Cuánto sumar.
+     */
+    public void incrementar(int cantidad)
+    {
+        this.cantidad += cantidad;
+    }
+    
     /**
      * Reiniciar la cantidad a cero.
      */
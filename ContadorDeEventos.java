@@ -0,0 +1,64 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cuenta los nacimientos y las muertes de cada causa que anota el
+ * campo, desde cualquier cantidad de hilos a la vez. Lo comparten los
+ * dos campos de la simulación; las métricas y los eventos del registro
+ * de vuelo leen de él.
+ */
+public class ContadorDeEventos
+{
+    // Cuántos eventos hubo de cada causa, indexado por CausaDeEvento.
+    private final LongAdder[] porCausa;
+
+    /**
+     * Crea un contador en cero.
+     */
+    public ContadorDeEventos()
+    {
+        porCausa = new LongAdder[CausaDeEvento.CANTIDAD];
+        for(int causa = 0; causa < CausaDeEvento.CANTIDAD; causa++) {
+            porCausa[causa] = new LongAdder();
+        }
+    }
+
+    /**
+     * Cuenta un evento. Puede llamarse desde varios hilos a la vez.
+     * @param causa Un código de CausaDeEvento.
+     */
+    public void contar(int causa)
+    {
+        porCausa[causa].increment();
+    }
+
+    /**
+     * @param causa Un código de CausaDeEvento.
+     * @return Cuántos eventos de esa causa hubo.
+     */
+    public long getCantidad(int causa)
+    {
+        return porCausa[causa].sum();
+    }
+
+    /**
+     * @return Cuántos nacimientos hubo.
+     */
+    public long getNacimientos()
+    {
+        return porCausa[CausaDeEvento.NACIMIENTO].sum();
+    }
+
+    /**
+     * @return Cuántas muertes hubo, de cualquier causa.
+     */
+    public long getMuertes()
+    {
+        long muertes = 0;
+        for(int causa = 0; causa < CausaDeEvento.CANTIDAD; causa++) {
+            if(causa != CausaDeEvento.NACIMIENTO) {
+                muertes += porCausa[causa].sum();
+            }
+        }
+        return muertes;
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.Arrays;
+
+/**
+ * Una copia compacta del estado del campo en un paso, para dibujarla en
+ * otro hilo mientras la simulación sigue: el código de especie de cada
+ * posición, un byte por posición, y la cantidad de cada especie.
+ */
+public class CuadroDelCampo
+{
+    private final int largo, ancho;
+    // El código de especie de cada posición, fila por fila.
+    private final byte[] especies;
+    // La cantidad de posiciones de cada especie.
+    private final int[] cantidades;
+    private int paso;
+
+    /**
+     * Crea un cuadro vacío para un campo de las dimensiones dadas.
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     */
+    public CuadroDelCampo(int largo, int ancho)
+    {
+        long area = (long) largo * ancho;
+        if(area > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Campo demasiado grande para un cuadro: "
+                                               + largo + "x" + ancho);
+        }
+        this.largo = largo;
+        this.ancho = ancho;
+        especies = new byte[(int) area];
+        cantidades = new int[Especie.CANTIDAD];
+    }
+
+    /**
+     * Copia el estado del campo. El costo depende del área y de la
+     * población, no del tamaño de la ventana.
+     * @param paso El paso de la simulación.
+     * @param campo El campo a copiar, de las dimensiones del cuadro.
+     */
+    public void capturar(int paso, Campo campo)
+    {
+        this.paso = paso;
+        Arrays.fill(especies, (byte) Especie.VACIO);
+        Arrays.fill(cantidades, 0);
+        Hierba hierba = campo.getHierba();
+        if(hierba != null && hierba.getCantidad() > 0) {
+            hierba.recorrer(new Hierba.VisitanteDeHierba() {
+                public void visitar(int fila, int columna, int nivel)
+                {
+                    especies[fila * ancho + columna] = (byte) Especie.HIERBA;
+                }
+            });
+        }
+        // Los animales tapan a la hierba de su posición.
+        campo.recorrerOcupadas(new VisitanteDeCeldas() {
+            public void visitar(int fila, int columna, Animal animal)
+            {
+                especies[fila * ancho + columna] = (byte) animal.getEspecie();
+            }
+        });
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            cantidades[especie] = campo.getCantidad(especie);
+        }
+    }
+
+    /**
+     * @return El paso en que se capturó el cuadro.
+     */
+    public int getPaso()
+    {
+        return paso;
+    }
+
+    public int getLargo()
+    {
+        return largo;
+    }
+
+    public int getAncho()
+    {
+        return ancho;
+    }
+
+    /**
+     * @return El código de especie que se ve en la posición dada.
+     */
+    public int getEspecieEn(int fila, int columna)
+    {
+        return especies[fila * ancho + columna];
+    }
+
+    /**
+     * @param especie Un código de especie.
+     * @return Cuántos ocupantes de esa especie había en el campo.
+     */
+    public int getCantidad(int especie)
+    {
+        return cantidades[especie];
+    }
+
+    /**
+     * @return Los códigos de especie de todas las posiciones, fila por
+     *         fila. No debe modificarse.
+     */
+    byte[] getEspecies()
+    {
+        return especies;
+    }
+}
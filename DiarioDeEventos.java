@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registra en un archivo los nacimientos y las muertes de cada paso.
+ * Durante el paso, los animales anotan cada evento en un lote en
+ * memoria: un índice atómico reserva la posición, así varios hilos
+ * pueden anotar a la vez sin bloqueos. Al cerrar el paso, el lote pasa
+ * a un hilo escritor que lo codifica y lo agrega al archivo, mientras
+ * la simulación continúa con otro lote.
+ * El archivo empieza con un mágico y contiene, por cada paso con
+ * eventos, el paso y la cantidad de eventos como varint, y por cada
+ * evento un byte con la causa y la especie seguido de la fila y la
+ * columna como varint. Si el archivo ya existe, se agrega al final.
+ * Ver LectorDeDiario.
+ */
+public class DiarioDeEventos
+{
+    // Identifica a los archivos de diario.
+    static final int MAGICO = 0x5A794445;
+    // Bits de la especie dentro del byte de tipo de cada evento.
+    static final int BITS_DE_ESPECIE = 3;
+    // Capacidad inicial de cada lote.
+    private static final int CAPACIDAD_INICIAL = 1 << 12;
+    // Lotes en memoria: uno que se llena y los que esperan al escritor.
+    private static final int LOTES = 3;
+    // Tamaño del bloque que el escritor escribe de una vez.
+    private static final int TAMANIO_DEL_BLOQUE = 1 << 20;
+
+    private final FileChannel canal;
+    private final Thread escritor;
+    // Lotes llenos, en orden, para el escritor; y lotes ya escritos, para
+    // volver a usar.
+    private final BlockingQueue<Lote> pendientes;
+    private final BlockingQueue<Lote> libres;
+    // El lote del paso actual.
+    private Lote actual;
+    // La primera falla del escritor, si la hubo.
+    private volatile IOException falla;
+
+    /**
+     * Abre o crea un diario y arranca su hilo escritor.
+     * @param archivo El archivo del diario.
+     */
+    public DiarioDeEventos(Path archivo)
+    {
+        try {
+            canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                     StandardOpenOption.APPEND);
+            if(canal.size() == 0) {
+                ByteBuffer cabecera = ByteBuffer.allocate(4);
+                cabecera.putInt(MAGICO).flip();
+                canal.write(cabecera);
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el diario " + archivo, e);
+        }
+        pendientes = new ArrayBlockingQueue<Lote>(LOTES);
+        libres = new ArrayBlockingQueue<Lote>(LOTES);
+        for(int i = 1; i < LOTES; i++) {
+            libres.add(new Lote(CAPACIDAD_INICIAL));
+        }
+        actual = new Lote(CAPACIDAD_INICIAL);
+        escritor = new Thread(this::escribirLotes, "DiarioDeEventos");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    /**
+     * Anota un evento del paso actual. Puede llamarse desde varios hilos
+     * a la vez.
+     * @param causa Un código de CausaDeEvento.
+     * @param especie El código de especie del animal.
+     * @param fila La fila donde ocurrió.
+     * @param columna La columna donde ocurrió.
+     */
+    public void registrar(int causa, int especie, int fila, int columna)
+    {
+        actual.anotar((byte) (causa << BITS_DE_ESPECIE | especie), Ubicacion.empaquetar(fila, columna));
+    }
+
+    /**
+     * Entrega al escritor los eventos del paso. Se llama entre pasos,
+     * cuando ningún hilo está anotando. Si el escritor está atrasado,
+     * espera a que libere un lote.
+     * @param paso El paso que terminó.
+     */
+    public void cerrarPaso(int paso)
+    {
+        verificar();
+        Lote lleno = actual;
+        lleno.paso = paso;
+        int cantidad = lleno.getCantidad();
+        try {
+            pendientes.put(lleno);
+            actual = libres.take();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido al cerrar el paso " + paso, e);
+        }
+        // El lote siguiente tendrá lugar para tantos eventos como éste.
+        actual.preparar(cantidad);
+    }
+
+    /**
+     * Espera a que se escriban los pasos cerrados y cierra el archivo.
+     * Los eventos anotados después del último cierre de paso se pierden.
+     */
+    public void cerrar()
+    {
+        try {
+            pendientes.put(new Lote(0));
+            escritor.join();
+            canal.close();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo cerrar el diario", e);
+        }
+        verificar();
+    }
+
+    /**
+     * Lanza la falla del escritor, si la hubo.
+     */
+    private void verificar()
+    {
+        if(falla != null) {
+            throw new UncheckedIOException("Falló la escritura del diario", falla);
+        }
+    }
+
+    /**
+     * Cuerpo del hilo escritor: codifica los lotes en orden hasta
+     * recibir un lote vacío de capacidad cero.
+     */
+    private void escribirLotes()
+    {
+        ByteBuffer bloque = ByteBuffer.allocateDirect(TAMANIO_DEL_BLOQUE);
+        try {
+            while(true) {
+                Lote lote = pendientes.take();
+                if(lote.tipos.length == 0) {
+                    break;
+                }
+                if(falla == null) {
+                    try {
+                        escribirLote(lote, bloque);
+                    }
+                    catch(IOException e) {
+                        falla = e;
+                    }
+                }
+                libres.put(lote);
+            }
+            if(falla == null) {
+                vaciar(bloque);
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException e) {
+            falla = e;
+        }
+    }
+
+    private void escribirLote(Lote lote, ByteBuffer bloque) throws IOException
+    {
+        int cantidad = lote.getCantidad();
+        if(cantidad == 0) {
+            return;
+        }
+        // Paso, cantidad y a lo sumo once bytes por evento.
+        if(bloque.remaining() < 20) {
+            vaciar(bloque);
+        }
+        ponerVarint(bloque, lote.paso);
+        ponerVarint(bloque, cantidad);
+        for(int i = 0; i < cantidad; i++) {
+            if(bloque.remaining() < 11) {
+                vaciar(bloque);
+            }
+            long posicion = lote.posiciones[i];
+            bloque.put(lote.tipos[i]);
+            ponerVarint(bloque, Ubicacion.filaDe(posicion));
+            ponerVarint(bloque, Ubicacion.columnaDe(posicion));
+        }
+    }
+
+    private void vaciar(ByteBuffer bloque) throws IOException
+    {
+        bloque.flip();
+        while(bloque.hasRemaining()) {
+            canal.write(bloque);
+        }
+        bloque.clear();
+    }
+
+    /**
+     * Escribe un entero no negativo en 7 bits por byte; el bit alto indica
+     * que sigue otro byte.
+     */
+    private static void ponerVarint(ByteBuffer bloque, int valor)
+    {
+        while((valor & ~0x7F) != 0) {
+            bloque.put((byte) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        bloque.put((byte) valor);
+    }
+
+    /**
+     * Los eventos de un paso. Las posiciones se reservan con un índice
+     * atómico; las que no caben en la capacidad van a un desborde
+     * sincronizado, que sólo se usa en un paso con muchos más eventos
+     * que el anterior.
+     */
+    private static class Lote
+    {
+        private final AtomicInteger siguiente;
+        private byte[] tipos;
+        private long[] posiciones;
+        // Eventos que no cupieron, y cuántos son.
+        private byte[] tiposDesbordados;
+        private long[] posicionesDesbordadas;
+        private int desbordados;
+        private int paso;
+
+        private Lote(int capacidad)
+        {
+            siguiente = new AtomicInteger();
+            tipos = new byte[capacidad];
+            posiciones = new long[capacidad];
+            tiposDesbordados = new byte[0];
+            posicionesDesbordadas = new long[0];
+        }
+
+        private void anotar(byte tipo, long posicion)
+        {
+            int i = siguiente.getAndIncrement();
+            if(i < tipos.length) {
+                tipos[i] = tipo;
+                posiciones[i] = posicion;
+            }
+            else {
+                desbordar(tipo, posicion);
+            }
+        }
+
+        private synchronized void desbordar(byte tipo, long posicion)
+        {
+            if(desbordados == tiposDesbordados.length) {
+                int capacidad = Math.max(16, desbordados * 2);
+                tiposDesbordados = Arrays.copyOf(tiposDesbordados, capacidad);
+                posicionesDesbordadas = Arrays.copyOf(posicionesDesbordadas, capacidad);
+            }
+            tiposDesbordados[desbordados] = tipo;
+            posicionesDesbordadas[desbordados] = posicion;
+            desbordados++;
+        }
+
+        /**
+         * @return La cantidad de eventos anotados. Junta el desborde con
+         *         el resto; sólo se llama cuando nadie anota.
+         */
+        private int getCantidad()
+        {
+            if(desbordados > 0) {
+                int capacidad = tipos.length;
+                tipos = Arrays.copyOf(tipos, capacidad + desbordados);
+                posiciones = Arrays.copyOf(posiciones, capacidad + desbordados);
+                System.arraycopy(tiposDesbordados, 0, tipos, capacidad, desbordados);
+                System.arraycopy(posicionesDesbordadas, 0, posiciones, capacidad, desbordados);
+                siguiente.set(tipos.length);
+                desbordados = 0;
+            }
+            return Math.min(siguiente.get(), tipos.length);
+        }
+
+        /**
+         * Vacía el lote y se asegura de que tenga lugar para la cantidad
+         * de eventos dada.
+         */
+        private void preparar(int esperados)
+        {
+            if(esperados > tipos.length) {
+                int capacidad = Integer.highestOneBit(esperados - 1) << 1;
+                tipos = new byte[capacidad];
+                posiciones = new long[capacidad];
+            }
+            siguiente.set(0);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Ejecuta muchas corridas independientes de la misma configuración,
+ * cada una sin visor y con su propia semilla, repartidas entre un
+ * número fijo de hilos. De cada corrida no se guarda la serie completa:
+ * la población de cada especie en cada paso y el paso de extinción se
+ * acumulan en resúmenes en línea (EstadisticaEnLinea), uno por tarea,
+ * que se combinan al final.
+ * Los campos chicos se agrupan: cada tarea ejecuta varias corridas
+ * seguidas sobre el mismo Simulador, así el costo de repartir las
+ * tareas no supera al de simular.
+ * Uso: java EnsambleDeSimulaciones [largo ancho pasos corridas hilos]
+ */
+public class EnsambleDeSimulaciones
+{
+    // Resolución de los histogramas de cada resumen.
+    private static final int CUBETAS = 64;
+    // Posiciones que debería simular cada tarea, sumando sus corridas,
+    // para que valga la pena repartirla.
+    private static final long AREA_MINIMA_POR_TAREA = 250000;
+    // Tareas por hilo, para que los hilos terminen parejos.
+    private static final int TAREAS_POR_HILO = 4;
+
+    private final int largo, ancho, pasos;
+    private final TipoDeCampo tipo;
+
+    /**
+     * @param largo El largo del campo de cada corrida.
+     * @param ancho El ancho del campo de cada corrida.
+     * @param tipo La forma de almacenar los campos.
+     * @param pasos Los pasos de cada corrida.
+     */
+    public EnsambleDeSimulaciones(int largo, int ancho, TipoDeCampo tipo, int pasos)
+    {
+        this.largo = largo;
+        this.ancho = ancho;
+        this.tipo = tipo;
+        this.pasos = pasos;
+    }
+
+    /**
+     * Ejecuta las corridas. La semilla de la corrida i se deriva de la
+     * semilla dada y de i, por lo que el resultado no depende de la
+     * cantidad de hilos.
+     * @param corridas La cantidad de corridas.
+     * @param semilla La semilla del ensamble.
+     * @param hilos La cantidad de hilos a usar.
+     * @return Los resúmenes combinados de todas las corridas.
+     */
+    public Resultado ejecutar(int corridas, long semilla, int hilos) throws InterruptedException
+    {
+        long area = (long) largo * ancho;
+        int corridasPorTarea = (int) Math.max(1, Math.min((AREA_MINIMA_POR_TAREA + area - 1) / area,
+                                                          corridas / ((long) hilos * TAREAS_POR_HILO)));
+        List<Callable<Resultado>> tareas = new ArrayList<Callable<Resultado>>();
+        for(int desde = 0; desde < corridas; desde += corridasPorTarea) {
+            final int primera = desde;
+            final int ultima = Math.min(corridas, desde + corridasPorTarea);
+            tareas.add(new Callable<Resultado>() {
+                public Resultado call()
+                {
+                    return ejecutarCorridas(primera, ultima, semilla);
+                }
+            });
+        }
+
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        try {
+            Resultado total = new Resultado(largo, ancho, pasos);
+            for(Future<Resultado> parcial : ejecutor.invokeAll(tareas)) {
+                total.combinar(parcial.get());
+            }
+            return total;
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("Falló una corrida del ensamble.", e.getCause());
+        }
+        finally {
+            ejecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Ejecuta en este hilo las corridas de primera a ultima (exclusive).
+     */
+    private Resultado ejecutarCorridas(int primera, int ultima, long semilla)
+    {
+        final Resultado resultado = new Resultado(largo, ancho, pasos);
+        final int[] cuentas = new int[Especie.CANTIDAD];
+        final int[] extincion = new int[1];
+        Simulador simulador = new Simulador(largo, ancho, tipo, false, semilla);
+        simulador.agregarObservador(new ObservadorDeSimulacion() {
+            public void mostrarEstado(int paso, Campo campo)
+            {
+                contar(campo, cuentas);
+                for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+                    resultado.poblacion[especie][paso].agregar(cuentas[especie]);
+                }
+                if(extincion[0] < 0 && (cuentas[Especie.CONEJO] == 0 || cuentas[Especie.ZORRO] == 0)) {
+                    extincion[0] = paso;
+                }
+            }
+        });
+        for(int corrida = primera; corrida < ultima; corrida++) {
+            extincion[0] = -1;
+            simulador.reiniciar(Azar.derivar(semilla, corrida, 0));
+            for(int paso = 1; paso <= pasos; paso++) {
+                simulador.simularUnPaso();
+            }
+            resultado.corridas++;
+            if(extincion[0] >= 0) {
+                resultado.pasoDeExtincion.agregar(extincion[0]);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Cuenta los ocupantes de cada especie, con las cantidades que el
+     * campo mantiene.
+     */
+    private static void contar(Campo campo, int[] cuentas)
+    {
+        for(int especie = 0; especie < Especie.CANTIDAD; especie++) {
+            cuentas[especie] = especie == Especie.VACIO ? 0 : campo.getCantidad(especie);
+        }
+    }
+
+    /**
+     * Los resúmenes de un conjunto de corridas.
+     */
+    public static class Resultado
+    {
+        private final EstadisticaEnLinea[][] poblacion;
+        private final EstadisticaEnLinea pasoDeExtincion;
+        private long corridas;
+
+        private Resultado(int largo, int ancho, int pasos)
+        {
+            poblacion = new EstadisticaEnLinea[Especie.CANTIDAD][pasos + 1];
+            for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+                for(int paso = 0; paso <= pasos; paso++) {
+                    poblacion[especie][paso] = new EstadisticaEnLinea(0, (double) largo * ancho, CUBETAS);
+                }
+            }
+            pasoDeExtincion = new EstadisticaEnLinea(0, pasos, CUBETAS);
+        }
+
+        private void combinar(Resultado otro)
+        {
+            for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+                for(int paso = 0; paso < poblacion[especie].length; paso++) {
+                    poblacion[especie][paso].combinar(otro.poblacion[especie][paso]);
+                }
+            }
+            pasoDeExtincion.combinar(otro.pasoDeExtincion);
+            corridas += otro.corridas;
+        }
+
+        /**
+         * @param especie Un código de Especie, distinto de VACIO.
+         * @param paso Un paso entre 0 y la cantidad de pasos.
+         * @return El resumen de la población de esa especie en ese paso.
+         */
+        public EstadisticaEnLinea getPoblacion(int especie, int paso)
+        {
+            return poblacion[especie][paso];
+        }
+
+        /**
+         * @return El resumen del primer paso en que no quedaban conejos o
+         *         zorros, sólo de las corridas en que eso ocurrió.
+         */
+        public EstadisticaEnLinea getPasoDeExtincion()
+        {
+            return pasoDeExtincion;
+        }
+
+        /**
+         * @return La cantidad de corridas.
+         */
+        public long getCorridas()
+        {
+            return corridas;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int largo = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int ancho = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int pasos = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int corridas = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        int hilos = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        long inicio = System.nanoTime();
+        Resultado resultado = new EnsambleDeSimulaciones(largo, ancho, TipoDeCampo.DENSO, pasos)
+                .ejecutar(corridas, 42, hilos);
+        System.out.printf("%d corridas de %d pasos en %dx%d, %d hilos: %.0f ms%n", resultado.getCorridas(),
+                          pasos, largo, ancho, hilos, (System.nanoTime() - inicio) / 1e6);
+        EstadisticaEnLinea extincion = resultado.getPasoDeExtincion();
+        System.out.printf("Extinción en %d corridas: media %.1f ± %.1f, mediana %.0f, 5%%-95%% [%.0f, %.0f]%n",
+                          extincion.getCantidad(), extincion.getMedia(), extincion.getMargenDeLaMedia(),
+                          extincion.cuantil(0.5), extincion.cuantil(0.05), extincion.cuantil(0.95));
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            EstadisticaEnLinea ultimo = resultado.getPoblacion(especie, pasos);
+            System.out.printf("%s en el paso %d: media %.1f, desvío %.1f%n", Especie.getNombre(especie),
+                              pasos, ultimo.getMedia(), ultimo.getDesvio());
+        }
+    }
+}
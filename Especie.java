@@ -0,0 +1,30 @@
+/**
+ * Códigos numéricos para cada tipo de participante de la simulación.
+ * Permiten que los almacenamientos del campo guarden el contenido de
+ * cada posición como un número en lugar de una referencia a un objeto.
+ */
+public final class Especie
+{
+    // Posición sin ocupante.
+    public static final int VACIO = 0;
+    public static final int CONEJO = 1;
+    public static final int ZORRO = 2;
+    public static final int HIERBA = 3;
+    // Cantidad de códigos definidos, incluyendo VACIO.
+    public static final int CANTIDAD = 4;
+
+    private static final String[] NOMBRES = { "Vacio", "Conejo", "Zorro", "Hierba" };
+
+    private Especie()
+    {
+    }
+
+    /**
+     * @param especie Un código de especie.
+     * @return El nombre de la especie.
+     */
+    public static String getNombre(int especie)
+    {
+        return NOMBRES[especie];
+    }
+}
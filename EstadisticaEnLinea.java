@@ -0,0 +1,131 @@
+/**
+ * Resume una serie de valores sin guardarlos: cantidad, media y
+ * varianza se actualizan con el método de Welford, y los cuantiles se
+ * estiman con un histograma de cubetas de igual ancho entre un mínimo y
+ * un máximo fijos. Dos resúmenes con los mismos límites se pueden
+ * combinar, así cada hilo acumula el suyo y al final se unen.
+ */
+public class EstadisticaEnLinea
+{
+    private final double minimo, maximo;
+    private final long[] cubetas;
+    private long cantidad;
+    private double media;
+    // Suma de los cuadrados de las diferencias con la media.
+    private double m2;
+
+    /**
+     * @param minimo El menor valor esperado.
+     * @param maximo El mayor valor esperado. Los valores fuera del rango
+     *               se cuentan en la primera o la última cubeta.
+     * @param cantidadDeCubetas La resolución del histograma.
+     */
+    public EstadisticaEnLinea(double minimo, double maximo, int cantidadDeCubetas)
+    {
+        this.minimo = minimo;
+        this.maximo = maximo > minimo ? maximo : minimo + 1;
+        cubetas = new long[cantidadDeCubetas];
+    }
+
+    /**
+     * Agrega un valor.
+     * @param valor El valor a agregar.
+     */
+    public void agregar(double valor)
+    {
+        cantidad++;
+        double diferencia = valor - media;
+        media += diferencia / cantidad;
+        m2 += diferencia * (valor - media);
+        cubetas[cubeta(valor)]++;
+    }
+
+    /**
+     * Suma a este resumen los valores de otro con los mismos límites.
+     * @param otra El resumen a combinar.
+     */
+    public void combinar(EstadisticaEnLinea otra)
+    {
+        if(otra.cantidad == 0) {
+            return;
+        }
+        long total = cantidad + otra.cantidad;
+        double diferencia = otra.media - media;
+        media += diferencia * otra.cantidad / total;
+        m2 += otra.m2 + diferencia * diferencia * ((double) cantidad * otra.cantidad / total);
+        cantidad = total;
+        for(int i = 0; i < cubetas.length; i++) {
+            cubetas[i] += otra.cubetas[i];
+        }
+    }
+
+    /**
+     * @return La cantidad de valores agregados.
+     */
+    public long getCantidad()
+    {
+        return cantidad;
+    }
+
+    /**
+     * @return La media de los valores, o 0 si no hay ninguno.
+     */
+    public double getMedia()
+    {
+        return media;
+    }
+
+    /**
+     * @return La varianza muestral de los valores.
+     */
+    public double getVarianza()
+    {
+        return cantidad > 1 ? m2 / (cantidad - 1) : 0;
+    }
+
+    /**
+     * @return El desvío estándar muestral de los valores.
+     */
+    public double getDesvio()
+    {
+        return Math.sqrt(getVarianza());
+    }
+
+    /**
+     * @return La mitad del ancho del intervalo de confianza del 95 % para
+     *         la media, con aproximación normal.
+     */
+    public double getMargenDeLaMedia()
+    {
+        return cantidad > 1 ? 1.96 * getDesvio() / Math.sqrt(cantidad) : 0;
+    }
+
+    /**
+     * Estima un cuantil interpolando dentro de la cubeta que lo contiene.
+     * @param q La fracción, entre 0 y 1 (0.5 es la mediana).
+     * @return El cuantil estimado, o NaN si no hay valores.
+     */
+    public double cuantil(double q)
+    {
+        if(cantidad == 0) {
+            return Double.NaN;
+        }
+        double objetivo = Math.min(Math.max(q, 0), 1) * cantidad;
+        double ancho = (maximo - minimo) / cubetas.length;
+        long acumulado = 0;
+        for(int i = 0; i < cubetas.length; i++) {
+            if(cubetas[i] > 0 && acumulado + cubetas[i] >= objetivo) {
+                double fraccion = (objetivo - acumulado) / cubetas[i];
+                return minimo + (i + fraccion) * ancho;
+            }
+            acumulado += cubetas[i];
+        }
+        return maximo;
+    }
+
+    private int cubeta(double valor)
+    {
+        int i = (int) ((valor - minimo) / (maximo - minimo) * cubetas.length);
+        return Math.min(Math.max(i, 0), cubetas.length - 1);
+    }
+}
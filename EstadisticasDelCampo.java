@@ -1,10 +1,10 @@
-import java.awt.Color;
-import java.util.HashMap;
-
 /**
  * Esta clase recolecta y provee datos estadístidos respecto al estado
- * del campo. Es flexible: creará y mantendrá un contador para cualquier
- * clase de objeto que encuentre dentro del campo
+ * del campo. Tiene un contador para cada especie, indexado por su
+ * código. Las cuentas las mantiene el campo a medida que se ubican los
+ * animales, así que obtenerlas no recorre el campo: cuesta lo mismo
+ * para cualquier área y población.
+ * Guarda además el historial de las cuentas de cada paso registrado.
  * 
  * @author David J. Barnes and Michael Kolling
  * @author Traducción: Maximiliano A. Eschoyez
@@ -12,20 +12,29 @@ import java.util.HashMap;
  */
 public class EstadisticasDelCampo
 {
-    // Contadores para cada tipo de entidad (zorro, conejo, etc.) en la simulación.
-    private HashMap<Class, Contador> contadores;
+    // Contadores para cada especie (zorro, conejo, etc.) en la
+    // simulación, indexados por código de especie.
+    private Contador[] contadores;
     // Indicador de que los contadores están actualizados.
     private boolean cuentaValida;
+    // Las cuentas de los pasos registrados.
+    private HistorialDePoblacion historial;
+    // Donde se copian las cuentas de un paso para el historial.
+    private int[] cuentas;
 
     /**
      * Construye un objecto EstadisticasDelCampo.
      */
     public EstadisticasDelCampo()
     {
-        // Establece una colección de contadores para cada tipo de
-        // animal que podemos encontrar
-        contadores = new HashMap<Class, Contador>();
+        // Establece un contador para cada especie que podemos encontrar.
+        contadores = new Contador[Especie.CANTIDAD];
+        for(int especie = 0; especie < Especie.CANTIDAD; especie++) {
+            contadores[especie] = new Contador(Especie.getNombre(especie));
+        }
         cuentaValida = true;
+        historial = new HistorialDePoblacion();
+        cuentas = new int[Especie.CANTIDAD];
     }
 
     /**
@@ -38,12 +47,14 @@ public class EstadisticasDelCampo
         if(!cuentaValida) {
             generarCuentas(campo);
         }
-        for(Class key : contadores.keySet()) {
-            Contador info = contadores.get(key);
-            buffer.append(info.getNombre());
-            buffer.append(": ");
-            buffer.append(info.getCantidad());
-            buffer.append(' ');
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            Contador info = contadores[especie];
+            if(info.getCantidad() > 0) {
+                buffer.append(info.getNombre());
+                buffer.append(": ");
+                buffer.append(info.getCantidad());
+                buffer.append(' ');
+            }
         }
         return buffer.toString();
     }
@@ -55,26 +66,28 @@ public class EstadisticasDelCampo
     public void inicializar()
     {
         cuentaValida = false;
-        for(Class key : contadores.keySet()) {
-            Contador contador = contadores.get(key);
+        for(Contador contador : contadores) {
             contador.reiniciar();
         }
     }
 
     /**
-     * Incrementa el contador para una clase de animal.
-     * @param claseAnimal La clase de animal a incrementar.
+     * Incrementa el contador para una especie.
+     * @param especie El código de la especie a incrementar.
      */
-    public void incrementarContador(Class claseAnimal)
+    public void incrementarContador(int especie)
     {
-        Contador contador = contadores.get(claseAnimal);
-        if(contador == null) {
-            // Si no tenemos un contador para esta especie,
-            // creamos uno.
-            contador = new Contador(claseAnimal.getName());
-            contadores.put(claseAnimal, contador);
-        }
-        contador.incrementar();
+        contadores[especie].incrementar();
+    }
+
+    /**
+     * Incrementa el contador para una especie en la cantidad dada.
+     * @param especie El código de la especie a incrementar.
+     * @param cantidad Cuánto incrementarlo.
+     */
+    public void incrementarContador(int especie, int cantidad)
+    {
+        contadores[especie].incrementar(cantidad);
     }
 
     /**
@@ -97,9 +110,8 @@ public class EstadisticasDelCampo
         if(!cuentaValida) {
             generarCuentas(campo);
         }
-        for(Class key : contadores.keySet()) {
-            Contador info = contadores.get(key);
-            if(info.getCantidad() > 0) {
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            if(contadores[especie].getCantidad() > 0) {
                 distintoCero++;
             }
         }
@@ -107,22 +119,40 @@ public class EstadisticasDelCampo
     }
     
     /**
-     * Genera cuentas del número de zorros y conejos.
-     * Estos contadores no se mantienen actualizados cuando
-     * se ubican zorros y conejos en el campo, se actualizan
-     * únicamente cuando se pide esta información.
+     * Agrega al historial las cuentas del campo en un paso. Cuesta lo
+     * mismo para cualquier campo y no crea objetos.
+     * @param paso El paso.
+     * @param campo El campo en ese paso.
+     */
+    public void registrarPaso(int paso, Campo campo)
+    {
+        if(!cuentaValida) {
+            generarCuentas(campo);
+        }
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            cuentas[especie] = contadores[especie].getCantidad();
+        }
+        historial.agregar(paso, cuentas);
+    }
+
+    /**
+     * @return El historial de las cuentas de los pasos registrados.
+     */
+    public HistorialDePoblacion getHistorial()
+    {
+        return historial;
+    }
+
+    /**
+     * Toma del campo las cuentas de cada especie. El campo las mantiene
+     * al ubicar a los animales, así que no hace falta recorrerlo.
      * @param campo El campo sobre el cual generar las estadísticas.
      */
     private void generarCuentas(Campo campo)
     {
         inicializar();
-        for(int fila = 0; fila < campo.getLargo(); fila++) {
-            for(int columna = 0; columna < campo.getAncho(); columna++) {
-                Animal animal = campo.getAnimalEn(fila, columna);
-                if(animal != null) {
-                    incrementarContador(animal.getClass());
-                }
-            }
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            contadores[especie].incrementar(campo.getCantidad(especie));
         }
         cuentaValida = true;
     }
@@ -0,0 +1,35 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Un derrumbe o una explosión de la población de una especie en el
+ * registro de vuelo (JFR): la cantidad cambió más que el umbral del
+ * RegistroDeVuelo en su ventana de pasos.
+ */
+@Name("simulador.CambioDePoblacion")
+@Label("Cambio brusco de población")
+@Category("Simulador")
+public class EventoDeCambioDePoblacion extends jdk.jfr.Event
+{
+    @Label("Paso")
+    int paso;
+
+    @Label("Especie")
+    String especie;
+
+    @Label("Cantidad anterior")
+    @Description("La cantidad al principio de la ventana.")
+    int anterior;
+
+    @Label("Cantidad")
+    int cantidad;
+
+    @Label("Pasos de la ventana")
+    int pasos;
+
+    @Label("Explosión")
+    @Description("true si la población creció, false si se derrumbó.")
+    boolean explosion;
+}
@@ -0,0 +1,39 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Un paso de la simulación en el registro de vuelo (JFR), con su
+ * duración, la población al terminarlo y los nacimientos y muertes que
+ * hubo en él. RegistroDeVuelo decide qué pasos se registran.
+ */
+@Name("simulador.Paso")
+@Label("Paso de la simulación")
+@Category("Simulador")
+@StackTrace(false)
+public class EventoDePaso extends jdk.jfr.Event
+{
+    @Label("Paso")
+    int paso;
+
+    @Label("Conejos")
+    int conejos;
+
+    @Label("Zorros")
+    int zorros;
+
+    @Label("Hierba")
+    int hierba;
+
+    @Label("Nacimientos")
+    long nacimientos;
+
+    @Label("Muertes")
+    long muertes;
+
+    @Label("Lento")
+    @Description("Se registró por durar mucho más que los pasos anteriores, no por muestreo.")
+    boolean lento;
+}
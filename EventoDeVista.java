@@ -0,0 +1,21 @@
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Una llamada a mostrarEstado de un observador en el registro de vuelo
+ * (JFR), con su duración.
+ */
+@Name("simulador.Vista")
+@Label("Vista de la simulación")
+@Category("Simulador")
+@StackTrace(false)
+public class EventoDeVista extends jdk.jfr.Event
+{
+    @Label("Paso")
+    int paso;
+
+    @Label("Observador")
+    Class<?> observador;
+}
@@ -0,0 +1,330 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Escribe en un archivo la cantidad de cada especie en cada paso. El
+ * hilo de la simulación sólo copia los números en un bloque en memoria;
+ * cuando el bloque se llena, pasa a un hilo escritor que lo codifica y
+ * lo agrega al archivo, mientras la simulación sigue con otro bloque.
+ * En formato BINARIO el archivo empieza con un mágico y la cantidad de
+ * especies, y sigue con bloques por columnas: la cantidad de pasos del
+ * bloque, los pasos, y luego las cantidades de cada especie en orden de
+ * código, todo como enteros de cuatro bytes. En formato CSV hay una
+ * línea por paso, con una cabecera con los nombres de las especies.
+ * Si el archivo ya existe, se reemplaza.
+ * Uso: java ExportadorDeHistorial archivo
+ * muestra como CSV un archivo binario.
+ */
+public class ExportadorDeHistorial
+{
+    /**
+     * Los formatos de archivo.
+     */
+    public enum Formato
+    {
+        BINARIO, CSV
+    }
+
+    // Identifica a los archivos binarios de historial.
+    static final int MAGICO = 0x5A794850;
+    // Pasos por bloque.
+    private static final int PASOS_POR_BLOQUE = 1 << 12;
+    // Bloques en memoria: uno que se llena y los que esperan al escritor.
+    private static final int BLOQUES = 3;
+
+    private final FileChannel canal;
+    private final Formato formato;
+    private final Thread escritor;
+    // Bloques llenos, en orden, para el escritor; y bloques ya escritos,
+    // para volver a usar.
+    private final BlockingQueue<Bloque> pendientes;
+    private final BlockingQueue<Bloque> libres;
+    // El bloque que se está llenando.
+    private Bloque actual;
+    // La primera falla del escritor, si la hubo.
+    private volatile IOException falla;
+
+    /**
+     * Crea el archivo, escribe su cabecera y arranca el hilo escritor.
+     * @param archivo El archivo del historial.
+     * @param formato El formato del archivo.
+     */
+    public ExportadorDeHistorial(Path archivo, Formato formato)
+    {
+        this.formato = formato;
+        try {
+            canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                     StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer cabecera;
+            if(formato == Formato.BINARIO) {
+                cabecera = ByteBuffer.allocate(8);
+                cabecera.putInt(MAGICO).putInt(Especie.CANTIDAD - 1).flip();
+            }
+            else {
+                cabecera = ByteBuffer.wrap(cabeceraCsv().getBytes(StandardCharsets.US_ASCII));
+            }
+            while(cabecera.hasRemaining()) {
+                canal.write(cabecera);
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo crear el historial " + archivo, e);
+        }
+        pendientes = new ArrayBlockingQueue<Bloque>(BLOQUES);
+        libres = new ArrayBlockingQueue<Bloque>(BLOQUES);
+        for(int i = 1; i < BLOQUES; i++) {
+            libres.add(new Bloque(PASOS_POR_BLOQUE));
+        }
+        actual = new Bloque(PASOS_POR_BLOQUE);
+        escritor = new Thread(this::escribirBloques, "ExportadorDeHistorial");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    /**
+     * Agrega las cantidades de un paso. No formatea nada: sólo copia los
+     * números, salvo cuando el bloque se llena y el escritor está
+     * atrasado, en cuyo caso espera a que libere uno.
+     * @param paso El paso.
+     * @param cantidades La cantidad de cada especie, indexada por código
+     *                   de especie.
+     */
+    public void agregar(int paso, int[] cantidades)
+    {
+        Bloque bloque = actual;
+        int i = bloque.tamanio;
+        bloque.pasos[i] = paso;
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            bloque.cantidades[especie][i] = cantidades[especie];
+        }
+        bloque.tamanio = i + 1;
+        if(bloque.tamanio == PASOS_POR_BLOQUE) {
+            entregar();
+        }
+    }
+
+    /**
+     * Pasa el bloque actual al escritor y toma uno libre.
+     */
+    private void entregar()
+    {
+        verificar();
+        try {
+            pendientes.put(actual);
+            actual = libres.take();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido al exportar el historial", e);
+        }
+        actual.tamanio = 0;
+    }
+
+    /**
+     * Escribe los pasos agregados que falten y cierra el archivo.
+     */
+    public void cerrar()
+    {
+        try {
+            if(actual.tamanio > 0) {
+                entregar();
+            }
+            pendientes.put(new Bloque(0));
+            escritor.join();
+            canal.close();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo cerrar el historial", e);
+        }
+        verificar();
+    }
+
+    /**
+     * Lanza la falla del escritor, si la hubo.
+     */
+    private void verificar()
+    {
+        if(falla != null) {
+            throw new UncheckedIOException("Falló la escritura del historial", falla);
+        }
+    }
+
+    /**
+     * Cuerpo del hilo escritor: codifica los bloques en orden hasta
+     * recibir un bloque de capacidad cero.
+     */
+    private void escribirBloques()
+    {
+        ByteBuffer salida = ByteBuffer.allocateDirect(PASOS_POR_BLOQUE * Especie.CANTIDAD * 4 + 4);
+        StringBuilder texto = new StringBuilder();
+        try {
+            while(true) {
+                Bloque bloque = pendientes.take();
+                if(bloque.pasos.length == 0) {
+                    break;
+                }
+                if(falla == null) {
+                    try {
+                        if(formato == Formato.BINARIO) {
+                            escribirBinario(bloque, salida);
+                        }
+                        else {
+                            escribirCsv(bloque, texto);
+                        }
+                    }
+                    catch(IOException e) {
+                        falla = e;
+                    }
+                }
+                libres.put(bloque);
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void escribirBinario(Bloque bloque, ByteBuffer salida) throws IOException
+    {
+        int tamanio = bloque.tamanio;
+        salida.clear();
+        salida.putInt(tamanio);
+        salida.asIntBuffer().put(bloque.pasos, 0, tamanio);
+        salida.position(salida.position() + tamanio * 4);
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            salida.asIntBuffer().put(bloque.cantidades[especie], 0, tamanio);
+            salida.position(salida.position() + tamanio * 4);
+        }
+        salida.flip();
+        while(salida.hasRemaining()) {
+            canal.write(salida);
+        }
+    }
+
+    private void escribirCsv(Bloque bloque, StringBuilder texto) throws IOException
+    {
+        texto.setLength(0);
+        for(int i = 0; i < bloque.tamanio; i++) {
+            agregarLineaCsv(texto, bloque.pasos[i], bloque.cantidades, i);
+        }
+        ByteBuffer salida = ByteBuffer.wrap(texto.toString().getBytes(StandardCharsets.US_ASCII));
+        while(salida.hasRemaining()) {
+            canal.write(salida);
+        }
+    }
+
+    /**
+     * @return La línea de cabecera del formato CSV.
+     */
+    private static String cabeceraCsv()
+    {
+        StringBuilder cabecera = new StringBuilder("paso");
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            cabecera.append(',').append(Especie.getNombre(especie));
+        }
+        return cabecera.append('\n').toString();
+    }
+
+    /**
+     * Agrega la línea CSV de un paso.
+     * @param cantidades Las cantidades, por especie y por paso.
+     * @param i El paso dentro de las cantidades.
+     */
+    private static void agregarLineaCsv(StringBuilder texto, int paso, int[][] cantidades, int i)
+    {
+        texto.append(paso);
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            texto.append(',').append(cantidades[especie][i]);
+        }
+        texto.append('\n');
+    }
+
+    /**
+     * Muestra como CSV un historial escrito en formato binario, leyéndolo
+     * de a bloques.
+     */
+    public static void main(String[] args)
+    {
+        if(args.length != 1) {
+            System.err.println("Uso: java ExportadorDeHistorial archivo");
+            System.exit(1);
+        }
+        Path archivo = Paths.get(args[0]);
+        try(FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            ByteBuffer cabecera = ByteBuffer.allocate(8);
+            leerCompleto(canal, cabecera);
+            if(cabecera.getInt() != MAGICO || cabecera.getInt() != Especie.CANTIDAD - 1) {
+                throw new IllegalArgumentException(archivo + " no es un historial de esta versión.");
+            }
+            System.out.print(cabeceraCsv());
+            Bloque bloque = new Bloque(PASOS_POR_BLOQUE);
+            ByteBuffer entrada = ByteBuffer.allocate(PASOS_POR_BLOQUE * Especie.CANTIDAD * 4);
+            ByteBuffer tamanio = ByteBuffer.allocate(4);
+            StringBuilder texto = new StringBuilder();
+            while(canal.position() < canal.size()) {
+                tamanio.clear();
+                leerCompleto(canal, tamanio);
+                bloque.tamanio = tamanio.getInt();
+                if(bloque.tamanio < 0 || bloque.tamanio > PASOS_POR_BLOQUE) {
+                    throw new IllegalArgumentException(archivo + " tiene un bloque dañado.");
+                }
+                entrada.clear().limit(bloque.tamanio * Especie.CANTIDAD * 4);
+                leerCompleto(canal, entrada);
+                entrada.asIntBuffer().get(bloque.pasos, 0, bloque.tamanio);
+                for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+                    entrada.position(especie * bloque.tamanio * 4);
+                    entrada.asIntBuffer().get(bloque.cantidades[especie], 0, bloque.tamanio);
+                }
+                texto.setLength(0);
+                for(int i = 0; i < bloque.tamanio; i++) {
+                    agregarLineaCsv(texto, bloque.pasos[i], bloque.cantidades, i);
+                }
+                System.out.print(texto);
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo leer el historial " + archivo, e);
+        }
+    }
+
+    /**
+     * Llena el buffer desde el canal y lo prepara para leerlo.
+     */
+    private static void leerCompleto(FileChannel canal, ByteBuffer buffer) throws IOException
+    {
+        while(buffer.hasRemaining()) {
+            if(canal.read(buffer) < 0) {
+                throw new IOException("El historial termina antes de tiempo.");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Los pasos de un bloque, por columnas: los pasos y, por especie, sus
+     * cantidades.
+     */
+    private static class Bloque
+    {
+        private final int[] pasos;
+        private final int[][] cantidades;
+        private int tamanio;
+
+        private Bloque(int capacidad)
+        {
+            pasos = new int[capacidad];
+            cantidades = new int[Especie.CANTIDAD][capacidad];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Un flujo de números aleatorios con semilla conocida, basado en
+ * SplittableRandom. Los valores se generan de a bloques en un arreglo
+ * de long y se consumen desde allí, así los llamados frecuentes
+ * (direcciones por azar, reproducción) no pagan cada vez el costo de
+ * avanzar el generador.
+ * No es seguro para usar desde varios hilos a la vez; cada hilo o
+ * tarea usa su propio flujo (ver Azar).
+ */
+public class FlujoAleatorio implements RandomGenerator
+{
+    // Cantidad de valores que se generan de una vez.
+    private static final int TAMANIO_DEL_BLOQUE = 64;
+
+    private final SplittableRandom fuente;
+    private final long[] bloque;
+    // Posición del próximo valor a consumir del bloque.
+    private int siguiente;
+
+    /**
+     * Crea un flujo a partir de una semilla. Dos flujos con la misma
+     * semilla generan la misma secuencia.
+     * @param semilla La semilla del flujo.
+     */
+    public FlujoAleatorio(long semilla)
+    {
+        this(new SplittableRandom(semilla));
+    }
+
+    private FlujoAleatorio(SplittableRandom fuente)
+    {
+        this.fuente = fuente;
+        bloque = new long[TAMANIO_DEL_BLOQUE];
+        siguiente = TAMANIO_DEL_BLOQUE;
+    }
+
+    /**
+     * Separa un flujo nuevo, estadísticamente independiente de éste.
+     * @return El flujo nuevo.
+     */
+    public FlujoAleatorio separar()
+    {
+        return new FlujoAleatorio(fuente.split());
+    }
+
+    /**
+     * @return El próximo valor del bloque, generando uno nuevo si se
+     *         consumió por completo.
+     */
+    public long nextLong()
+    {
+        if(siguiente == TAMANIO_DEL_BLOQUE) {
+            for(int i = 0; i < TAMANIO_DEL_BLOQUE; i++) {
+                bloque[i] = fuente.nextLong();
+            }
+            siguiente = 0;
+        }
+        return bloque[siguiente++];
+    }
+
+    /**
+     * @return Un int uniforme entre 0 (inclusive) y cota (exclusive),
+     *         por multiplicación y rechazo, sin divisiones en el caso
+     *         común.
+     */
+    public int nextInt(int cota)
+    {
+        if(cota <= 0) {
+            throw new IllegalArgumentException("La cota debe ser positiva: " + cota);
+        }
+        long producto = (nextLong() >>> 32) * cota;
+        int resto = (int) producto;
+        if(Integer.compareUnsigned(resto, cota) < 0) {
+            int umbral = (int) ((1L << 32) % cota);
+            while(Integer.compareUnsigned(resto, umbral) < 0) {
+                producto = (nextLong() >>> 32) * cota;
+                resto = (int) producto;
+            }
+        }
+        return (int) (producto >>> 32);
+    }
+
+    /**
+     * @return Un double uniforme entre 0 (inclusive) y 1 (exclusive).
+     */
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+}
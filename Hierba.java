@@ -1,11 +1,396 @@
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public class Hierba extends Animal {
-    public Hierba() {
+/**
+ * La hierba del campo, guardada como un nivel por posición en un byte,
+ * fuera de la lista de animales: no actúa en cada paso ni se copia de un
+ * campo al otro. Nivel 0 indica que no hay hierba. La hierba ocupa su
+ * posición igual que un animal: ningún animal se traslada a ella, y el
+ * campo la informa como Especie.HIERBA donde no hay un animal.
+ * La comparten el campo y el campo actualizado.
+ * Como AlmacenPorBloques, divide el campo en bloques cuadrados de
+ * LADO_DE_BLOQUE posiciones de lado que se crean la primera vez que
+ * reciben hierba y se liberan cuando se quedan sin ella: una capa vacía
+ * no ocupa memoria por posición, y una capa con poca hierba, sólo la de
+ * sus bloques.
+ * Si se hace crecer entre pasos (ver crecer), el nivel es la edad de
+ * cada mata: las maduras brotan en las posiciones libres vecinas y al
+ * llegar al nivel máximo se secan.
+ */
+public class Hierba
+{
+    // El nivel desde el que una mata brota en las posiciones vecinas.
+    public static final int NIVEL_DE_MADUREZ = 8;
+    // El nivel en que una mata se seca y deja libre la posición.
+    public static final int NIVEL_MAXIMO = 60;
+    // Probabilidad, sobre 256, de que una posición libre junto a una
+    // mata madura brote en un paso.
+    private static final int PROBABILIDAD_DE_BROTE = 10;
+    // Logaritmo en base 2 del lado de los bloques.
+    private static final int BITS_DE_BLOQUE = 6;
+    // Cantidad de posiciones por lado de cada bloque.
+    public static final int LADO_DE_BLOQUE = 1 << BITS_DE_BLOQUE;
+    private static final int MASCARA_DE_BLOQUE = LADO_DE_BLOQUE - 1;
+
+    private final int largo, ancho;
+    // Los bloques, por fila de bloques; las filas de bloques también se
+    // crean recién cuando reciben hierba.
+    private final Bloque[][] bloques;
+    private final int bloquesPorFila;
+    // La cantidad de posiciones con hierba.
+    private int cantidad;
+    // Cuántas veces cambió la capa, para saber si una copia sigue al día.
+    private int cambios;
+
+    /**
+     * Recibe las posiciones con hierba.
+     */
+    public interface VisitanteDeHierba
+    {
+        /**
+         * @param fila La fila de la posición.
+         * @param columna La columna de la posición.
+         * @param nivel El nivel de la hierba, mayor que cero.
+         */
+        void visitar(int fila, int columna, int nivel);
+    }
+
+    /**
+     * Crea una capa de hierba vacía de las dimensiones dadas.
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     */
+    public Hierba(int largo, int ancho)
+    {
+        this.largo = largo;
+        this.ancho = ancho;
+        bloques = new Bloque[(largo + MASCARA_DE_BLOQUE) >> BITS_DE_BLOQUE][];
+        bloquesPorFila = (ancho + MASCARA_DE_BLOQUE) >> BITS_DE_BLOQUE;
+    }
+
+    /**
+     * @return true si hay hierba en la posición dada.
+     */
+    public boolean hayHierba(int fila, int columna)
+    {
+        return getNivel(fila, columna) != 0;
+    }
+
+    /**
+     * @param indice La posición como fila * ancho + columna.
+     * @return true si hay hierba en la posición dada.
+     */
+    boolean hayHierba(int indice)
+    {
+        return cantidad != 0 && getNivel(indice / ancho, indice % ancho) != 0;
+    }
+
+    /**
+     * @return El nivel de la hierba en la posición dada, o 0.
+     */
+    public int getNivel(int fila, int columna)
+    {
+        Bloque bloque = getBloque(fila, columna);
+        if(bloque == null) {
+            return 0;
+        }
+        return bloque.niveles[indiceEnBloque(fila, columna)];
     }
 
-    @Override
-    public void act(Campo campoActual, Campo campoActualizado, List<Animal> nuevosAnimales) {
-        if (estaVivo()) campoActualizado.ubicar(this);
+    /**
+     * Establece el nivel de la hierba en una posición.
+     * @param nivel Entre 0 (sin hierba) y NIVEL_MAXIMO.
+     */
+    public void setNivel(int fila, int columna, int nivel)
+    {
+        if(nivel < 0 || nivel > NIVEL_MAXIMO) {
+            throw new IllegalArgumentException("Nivel de hierba fuera de rango: " + nivel);
+        }
+        Bloque bloque = getBloque(fila, columna);
+        if(bloque == null) {
+            if(nivel == 0) {
+                return;
+            }
+            bloque = crearBloque(fila >> BITS_DE_BLOQUE, columna >> BITS_DE_BLOQUE);
+        }
+        int indice = indiceEnBloque(fila, columna);
+        int diferencia = (nivel != 0 ? 1 : 0) - (bloque.niveles[indice] != 0 ? 1 : 0);
+        bloque.niveles[indice] = (byte) nivel;
+        bloque.conHierba += diferencia;
+        cantidad += diferencia;
+        if(bloque.conHierba == 0) {
+            bloques[fila >> BITS_DE_BLOQUE][columna >> BITS_DE_BLOQUE] = null;
+        }
+        cambios++;
+    }
+
+    /**
+     * @return La cantidad de posiciones con hierba.
+     */
+    public int getCantidad()
+    {
+        return cantidad;
+    }
+
+    /**
+     * @return Un número que cambia cada vez que cambia algún nivel.
+     */
+    public int getCambios()
+    {
+        return cambios;
+    }
+
+    /**
+     * Quita toda la hierba y libera sus bloques.
+     */
+    public void limpiar()
+    {
+        Arrays.fill(bloques, null);
+        cantidad = 0;
+        cambios++;
+    }
+
+    /**
+     * Recorre las posiciones con hierba, bloque por bloque y, dentro de
+     * cada bloque, fila por fila.
+     * @param visitante Recibe cada posición y su nivel.
+     */
+    public void recorrer(VisitanteDeHierba visitante)
+    {
+        for(int filaDeBloque = 0; filaDeBloque < bloques.length; filaDeBloque++) {
+            Bloque[] filaDeBloques = bloques[filaDeBloque];
+            if(filaDeBloques == null) {
+                continue;
+            }
+            for(int columnaDeBloque = 0; columnaDeBloque < bloquesPorFila; columnaDeBloque++) {
+                Bloque bloque = filaDeBloques[columnaDeBloque];
+                if(bloque == null) {
+                    continue;
+                }
+                int fila0 = filaDeBloque << BITS_DE_BLOQUE;
+                int columna0 = columnaDeBloque << BITS_DE_BLOQUE;
+                for(int i = 0; i < bloque.niveles.length; i++) {
+                    if(bloque.niveles[i] != 0) {
+                        visitante.visitar(fila0 + (i >> BITS_DE_BLOQUE), columna0 + (i & MASCARA_DE_BLOQUE),
+                                          bloque.niveles[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Hace crecer la hierba un paso. Cada mata sube un nivel y se seca
+     * al pasar NIVEL_MAXIMO; cada posición sin hierba ni animal que
+     * tenga una mata madura arriba, abajo, a la izquierda o a la derecha
+     * brota con nivel 1 según un valor derivado de la semilla, el paso y
+     * la posición, así el resultado no depende de ningún otro flujo
+     * aleatorio. Sólo recorre los bloques con hierba y, de los bloques
+     * vecinos sin hierba, el borde que los toca, que es lo único que
+     * puede brotar en ellos. Cada bloque calcula sus niveles siguientes
+     * en un segundo arreglo, que se crea la primera vez que crece.
+     * @param campo El campo, para no brotar bajo un animal.
+     * @param semilla La semilla de la simulación.
+     * @param paso El paso que terminó.
+     */
+    public void crecer(Campo campo, long semilla, int paso)
+    {
+        // Los bloques que ya tenían hierba antes de este paso.
+        List<Bloque> conHierba = new ArrayList<Bloque>();
+        for(Bloque[] filaDeBloques : bloques) {
+            if(filaDeBloques != null) {
+                for(Bloque bloque : filaDeBloques) {
+                    if(bloque != null) {
+                        conHierba.add(bloque);
+                    }
+                }
+            }
+        }
+        for(Bloque bloque : conHierba) {
+            if(bloque.siguientes == null) {
+                bloque.siguientes = new byte[LADO_DE_BLOQUE * LADO_DE_BLOQUE];
+            }
+            calcularSiguientes(bloque, campo, semilla, paso);
+        }
+        // Los brotes en los bordes de los bloques vecinos vacíos; los
+        // bloques que se crean aquí empiezan sin hierba.
+        List<Bloque> nuevos = new ArrayList<Bloque>();
+        for(Bloque bloque : conHierba) {
+            brotarEnVecino(bloque, -1, 0, nuevos, campo, semilla, paso);
+            brotarEnVecino(bloque, 1, 0, nuevos, campo, semilla, paso);
+            brotarEnVecino(bloque, 0, -1, nuevos, campo, semilla, paso);
+            brotarEnVecino(bloque, 0, 1, nuevos, campo, semilla, paso);
+        }
+        // Todos los bloques pasan a sus niveles siguientes a la vez.
+        conHierba.addAll(nuevos);
+        int total = 0;
+        for(Bloque bloque : conHierba) {
+            byte[] anteriores = bloque.niveles;
+            bloque.niveles = bloque.siguientes;
+            bloque.siguientes = anteriores;
+            bloque.brotando = false;
+            int conNivel = 0;
+            for(byte nivel : bloque.niveles) {
+                conNivel += nivel != 0 ? 1 : 0;
+            }
+            bloque.conHierba = conNivel;
+            if(conNivel == 0) {
+                bloques[bloque.filaDeBloque][bloque.columnaDeBloque] = null;
+            }
+            total += conNivel;
+        }
+        cantidad = total;
+        cambios++;
+    }
+
+    /**
+     * Calcula los niveles siguientes de un bloque con hierba: en una
+     * sola pasada envejece sus matas, y después agrega los brotes junto
+     * a las matas maduras de antes de envejecer.
+     */
+    private void calcularSiguientes(Bloque bloque, Campo campo, long semilla, int paso)
+    {
+        byte[] actuales = bloque.niveles;
+        byte[] nuevos = bloque.siguientes;
+        for(int i = 0; i < actuales.length; i++) {
+            int nivel = actuales[i];
+            int siguiente = nivel == 0 ? 0 : nivel + 1;
+            nuevos[i] = (byte) (siguiente > NIVEL_MAXIMO ? 0 : siguiente);
+        }
+        int fila0 = bloque.filaDeBloque << BITS_DE_BLOQUE;
+        int columna0 = bloque.columnaDeBloque << BITS_DE_BLOQUE;
+        int filas = Math.min(LADO_DE_BLOQUE, largo - fila0);
+        int columnas = Math.min(LADO_DE_BLOQUE, ancho - columna0);
+        for(int f = 0; f < filas; f++) {
+            for(int c = 0; c < columnas; c++) {
+                int i = (f << BITS_DE_BLOQUE) | c;
+                if(actuales[i] == 0 && brota(fila0 + f, columna0 + c, campo, semilla, paso)) {
+                    nuevos[i] = 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Agrega los brotes del borde de un bloque vecino sin hierba que toca
+     * al bloque dado, creando el vecino si brota algo.
+     * @param df La fila del vecino respecto del bloque: -1, 0 o 1.
+     * @param dc La columna del vecino respecto del bloque: -1, 0 o 1.
+     * @param nuevos Recibe los bloques creados.
+     */
+    private void brotarEnVecino(Bloque bloque, int df, int dc, List<Bloque> nuevos,
+                                Campo campo, long semilla, int paso)
+    {
+        int filaDeBloque = bloque.filaDeBloque + df;
+        int columnaDeBloque = bloque.columnaDeBloque + dc;
+        if(filaDeBloque < 0 || filaDeBloque >= bloques.length
+                || columnaDeBloque < 0 || columnaDeBloque >= bloquesPorFila) {
+            return;
+        }
+        Bloque[] filaDeBloques = bloques[filaDeBloque];
+        Bloque vecino = filaDeBloques != null ? filaDeBloques[columnaDeBloque] : null;
+        if(vecino != null && !vecino.brotando) {
+            // El vecino tenía hierba y ya calculó sus niveles siguientes.
+            return;
+        }
+        int fila0 = filaDeBloque << BITS_DE_BLOQUE;
+        int columna0 = columnaDeBloque << BITS_DE_BLOQUE;
+        int filas = Math.min(LADO_DE_BLOQUE, largo - fila0);
+        int columnas = Math.min(LADO_DE_BLOQUE, ancho - columna0);
+        // La línea de posiciones del vecino que toca al bloque.
+        int f = df < 0 ? filas - 1 : 0;
+        int c = dc < 0 ? columnas - 1 : 0;
+        int largoDeLinea = df != 0 ? columnas : filas;
+        for(int k = 0; k < largoDeLinea; k++) {
+            int fila = fila0 + (df != 0 ? f : k);
+            int columna = columna0 + (df != 0 ? k : c);
+            if(brota(fila, columna, campo, semilla, paso)) {
+                if(vecino == null) {
+                    vecino = crearBloque(filaDeBloque, columnaDeBloque);
+                    vecino.siguientes = new byte[LADO_DE_BLOQUE * LADO_DE_BLOQUE];
+                    vecino.brotando = true;
+                    nuevos.add(vecino);
+                }
+                vecino.siguientes[indiceEnBloque(fila, columna)] = 1;
+            }
+        }
+    }
+
+    /**
+     * @return true si la posición, que no tiene hierba, brota en este
+     *         paso: tiene una mata madura al lado, el valor derivado de
+     *         la semilla lo permite y no hay un animal en ella.
+     */
+    private boolean brota(int fila, int columna, Campo campo, long semilla, int paso)
+    {
+        return tieneVecinaMadura(fila, columna)
+               && (Azar.derivar(semilla, paso, (long) fila * ancho + columna) & 0xFF) < PROBABILIDAD_DE_BROTE
+               && campo.getAnimalEn(fila, columna) == null;
+    }
+
+    private boolean tieneVecinaMadura(int fila, int columna)
+    {
+        return (fila > 0 && getNivel(fila - 1, columna) >= NIVEL_DE_MADUREZ)
+               || (fila < largo - 1 && getNivel(fila + 1, columna) >= NIVEL_DE_MADUREZ)
+               || (columna > 0 && getNivel(fila, columna - 1) >= NIVEL_DE_MADUREZ)
+               || (columna < ancho - 1 && getNivel(fila, columna + 1) >= NIVEL_DE_MADUREZ);
+    }
+
+    /**
+     * @return El bloque que contiene a la posición, o null si no existe.
+     */
+    private Bloque getBloque(int fila, int columna)
+    {
+        Bloque[] filaDeBloques = bloques[fila >> BITS_DE_BLOQUE];
+        if(filaDeBloques == null) {
+            return null;
+        }
+        return filaDeBloques[columna >> BITS_DE_BLOQUE];
+    }
+
+    /**
+     * Crea un bloque vacío en la posición dada de la malla de bloques.
+     */
+    private Bloque crearBloque(int filaDeBloque, int columnaDeBloque)
+    {
+        Bloque[] filaDeBloques = bloques[filaDeBloque];
+        if(filaDeBloques == null) {
+            filaDeBloques = new Bloque[bloquesPorFila];
+            bloques[filaDeBloque] = filaDeBloques;
+        }
+        Bloque bloque = new Bloque(filaDeBloque, columnaDeBloque);
+        filaDeBloques[columnaDeBloque] = bloque;
+        return bloque;
+    }
+
+    /**
+     * @return El índice de la posición dentro de su bloque.
+     */
+    private static int indiceEnBloque(int fila, int columna)
+    {
+        return ((fila & MASCARA_DE_BLOQUE) << BITS_DE_BLOQUE) | (columna & MASCARA_DE_BLOQUE);
+    }
+
+    /**
+     * Un bloque de LADO_DE_BLOQUE x LADO_DE_BLOQUE posiciones.
+     */
+    private static class Bloque
+    {
+        private final int filaDeBloque, columnaDeBloque;
+        private byte[] niveles = new byte[LADO_DE_BLOQUE * LADO_DE_BLOQUE];
+        // Donde crecer calcula los niveles siguientes, o null si el
+        // bloque todavía no creció.
+        private byte[] siguientes;
+        // Cantidad de posiciones con hierba del bloque.
+        private int conHierba;
+        // Si crecer lo creó en este paso para sus brotes.
+        private boolean brotando;
+
+        private Bloque(int filaDeBloque, int columnaDeBloque)
+        {
+            this.filaDeBloque = filaDeBloque;
+            this.columnaDeBloque = columnaDeBloque;
+        }
     }
 }
@@ -0,0 +1,124 @@
+import java.util.Arrays;
+
+/**
+ * Cuenta duraciones en nanosegundos en cubetas logarítmicas: cada
+ * potencia de dos se divide en SUBCUBETAS cubetas iguales, así el error
+ * de cualquier cuantil es menor que 1/SUBCUBETAS del valor, desde unos
+ * nanosegundos hasta horas, con un arreglo fijo y sin crear objetos al
+ * agregar. A diferencia de EstadisticaEnLinea no necesita conocer el
+ * rango de antemano.
+ * Lo escribe un solo hilo; otro hilo puede leerlo mientras tanto, y a
+ * lo sumo ve las últimas muestras a medias.
+ */
+public class HistogramaDeLatencia
+{
+    // Bits de la parte lineal de cada cubeta.
+    private static final int BITS_DE_SUBCUBETA = 4;
+    private static final int SUBCUBETAS = 1 << BITS_DE_SUBCUBETA;
+
+    private final long[] cubetas;
+    private long cantidad;
+    private long maximo;
+
+    /**
+     * Crea un histograma vacío.
+     */
+    public HistogramaDeLatencia()
+    {
+        cubetas = new long[(64 - BITS_DE_SUBCUBETA) * SUBCUBETAS];
+    }
+
+    /**
+     * Agrega una duración.
+     * @param nanos La duración en nanosegundos; las negativas cuentan
+     *              como cero.
+     */
+    public void agregar(long nanos)
+    {
+        long valor = Math.max(nanos, 0);
+        cubetas[cubeta(valor)]++;
+        cantidad++;
+        if(valor > maximo) {
+            maximo = valor;
+        }
+    }
+
+    /**
+     * Las duraciones menores que SUBCUBETAS tienen una cubeta cada una;
+     * las demás, la de su potencia de dos y sus siguientes bits.
+     */
+    private static int cubeta(long valor)
+    {
+        if(valor < SUBCUBETAS) {
+            return (int) valor;
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(valor);
+        int desplazamiento = exponente - BITS_DE_SUBCUBETA;
+        int sub = (int) (valor >>> desplazamiento) & (SUBCUBETAS - 1);
+        return (desplazamiento + 1) * SUBCUBETAS + sub;
+    }
+
+    /**
+     * @return El menor valor que cae en la cubeta dada.
+     */
+    private static long inicioDe(int cubeta)
+    {
+        if(cubeta < SUBCUBETAS) {
+            return cubeta;
+        }
+        int desplazamiento = cubeta / SUBCUBETAS - 1;
+        long sub = cubeta % SUBCUBETAS;
+        return (SUBCUBETAS + sub) << desplazamiento;
+    }
+
+    /**
+     * @param percentil Entre 0 y 100.
+     * @return La duración debajo de la cual está ese porcentaje de las
+     *         muestras, en nanosegundos, o 0 si no hay muestras.
+     */
+    public long getPercentil(double percentil)
+    {
+        long total = cantidad;
+        if(total == 0) {
+            return 0;
+        }
+        long buscado = Math.max(1, (long) Math.ceil(total * percentil / 100));
+        long acumulado = 0;
+        for(int i = 0; i < cubetas.length; i++) {
+            acumulado += cubetas[i];
+            if(acumulado >= buscado) {
+                // El punto medio de la cubeta, sin pasarse del máximo.
+                long inicio = inicioDe(i);
+                long fin = i + 1 < cubetas.length ? inicioDe(i + 1) : Long.MAX_VALUE;
+                return Math.min(inicio + (fin - inicio) / 2, maximo);
+            }
+        }
+        return maximo;
+    }
+
+    /**
+     * @return La mayor duración agregada, en nanosegundos.
+     */
+    public long getMaximo()
+    {
+        return maximo;
+    }
+
+    /**
+     * @return La cantidad de duraciones agregadas.
+     */
+    public long getCantidad()
+    {
+        return cantidad;
+    }
+
+    /**
+     * Olvida todas las duraciones.
+     */
+    public void reiniciar()
+    {
+        Arrays.fill(cubetas, 0);
+        cantidad = 0;
+        maximo = 0;
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * Guarda la cantidad de cada especie en cada paso, en memoria fija.
+ * Los pasos recientes se guardan uno por uno; a medida que se completan
+ * ventanas de FACTOR pasos, se resumen con el mínimo, el máximo y la
+ * media de cada especie en un nivel de menor resolución, y las ventanas
+ * de ese nivel se resumen a su vez en el siguiente. Cada nivel es un
+ * anillo de CAPACIDAD entradas que conserva las más recientes, así que
+ * la memoria no depende de la cantidad de pasos: el último nivel cubre
+ * más de mil millones.
+ * Los valores se guardan en arreglos de tipos primitivos, uno por
+ * especie, sin crear objetos por paso. Si tiene un exportador, cada
+ * paso se le pasa también completo.
+ */
+public class HistorialDePoblacion
+{
+    // Entradas que conserva cada nivel.
+    public static final int CAPACIDAD = 4096;
+    // Cuántas entradas de un nivel resume cada entrada del siguiente.
+    public static final int FACTOR = 64;
+    // Cantidad de niveles; el nivel n resume ventanas de FACTOR^n pasos.
+    public static final int NIVELES = 4;
+
+    private final Nivel[] niveles;
+    // Adonde se envían todos los pasos, o null.
+    private ExportadorDeHistorial exportador;
+
+    /**
+     * Crea un historial vacío.
+     */
+    public HistorialDePoblacion()
+    {
+        niveles = new Nivel[NIVELES];
+        int ventana = 1;
+        for(int n = 0; n < NIVELES; n++) {
+            niveles[n] = new Nivel(ventana);
+            ventana *= FACTOR;
+        }
+    }
+
+    /**
+     * Agrega las cantidades de un paso.
+     * @param paso El paso.
+     * @param cantidades La cantidad de cada especie, indexada por código
+     *                   de especie.
+     */
+    public void agregar(int paso, int[] cantidades)
+    {
+        Nivel nivel = niveles[0];
+        int i = nivel.reservar(paso);
+        for(int especie = 0; especie < Especie.CANTIDAD; especie++) {
+            int cantidad = cantidades[especie];
+            nivel.minimos[especie][i] = cantidad;
+            nivel.maximos[especie][i] = cantidad;
+            nivel.sumas[especie][i] = cantidad;
+        }
+        resumir(0, i);
+        if(exportador != null) {
+            exportador.agregar(paso, cantidades);
+        }
+    }
+
+    /**
+     * Acumula la entrada dada de un nivel en la ventana en curso del
+     * nivel siguiente y, si la ventana se completa, la guarda.
+     */
+    private void resumir(int n, int i)
+    {
+        if(n + 1 == NIVELES) {
+            return;
+        }
+        Nivel origen = niveles[n];
+        Nivel destino = niveles[n + 1];
+        if(destino.acumuladas == 0) {
+            destino.pasoAcumulado = origen.pasos[i];
+            for(int especie = 0; especie < Especie.CANTIDAD; especie++) {
+                destino.minimoAcumulado[especie] = origen.minimos[especie][i];
+                destino.maximoAcumulado[especie] = origen.maximos[especie][i];
+                destino.sumaAcumulada[especie] = origen.sumas[especie][i];
+            }
+        }
+        else {
+            for(int especie = 0; especie < Especie.CANTIDAD; especie++) {
+                destino.minimoAcumulado[especie] = Math.min(destino.minimoAcumulado[especie],
+                                                            origen.minimos[especie][i]);
+                destino.maximoAcumulado[especie] = Math.max(destino.maximoAcumulado[especie],
+                                                            origen.maximos[especie][i]);
+                destino.sumaAcumulada[especie] += origen.sumas[especie][i];
+            }
+        }
+        destino.acumuladas++;
+        if(destino.acumuladas == FACTOR) {
+            int j = destino.reservar(destino.pasoAcumulado);
+            for(int especie = 0; especie < Especie.CANTIDAD; especie++) {
+                destino.minimos[especie][j] = destino.minimoAcumulado[especie];
+                destino.maximos[especie][j] = destino.maximoAcumulado[especie];
+                destino.sumas[especie][j] = destino.sumaAcumulada[especie];
+            }
+            destino.acumuladas = 0;
+            resumir(n + 1, j);
+        }
+    }
+
+    /**
+     * Olvida todos los pasos guardados. No afecta al exportador.
+     */
+    public void limpiar()
+    {
+        for(Nivel nivel : niveles) {
+            nivel.tamanio = 0;
+            nivel.siguiente = 0;
+            nivel.acumuladas = 0;
+        }
+    }
+
+    /**
+     * Establece adonde se envían todos los pasos que se agreguen.
+     * @param exportador El exportador, o null.
+     */
+    public void setExportador(ExportadorDeHistorial exportador)
+    {
+        this.exportador = exportador;
+    }
+
+    /**
+     * @param nivel Un nivel, entre 0 y NIVELES - 1.
+     * @return Cuántos pasos resume cada entrada del nivel.
+     */
+    public int getVentana(int nivel)
+    {
+        return niveles[nivel].ventana;
+    }
+
+    /**
+     * @param nivel Un nivel, entre 0 y NIVELES - 1.
+     * @return Cuántas entradas guarda el nivel, a lo sumo CAPACIDAD.
+     */
+    public int getTamanio(int nivel)
+    {
+        return niveles[nivel].tamanio;
+    }
+
+    /**
+     * @param nivel Un nivel.
+     * @param i Una entrada del nivel, desde 0 para la más antigua.
+     * @return El primer paso que resume la entrada.
+     */
+    public int getPaso(int nivel, int i)
+    {
+        Nivel n = niveles[nivel];
+        return n.pasos[n.indice(i)];
+    }
+
+    /**
+     * @return El mínimo de la especie en la ventana de la entrada dada.
+     */
+    public int getMinimo(int nivel, int i, int especie)
+    {
+        Nivel n = niveles[nivel];
+        return n.minimos[especie][n.indice(i)];
+    }
+
+    /**
+     * @return El máximo de la especie en la ventana de la entrada dada.
+     */
+    public int getMaximo(int nivel, int i, int especie)
+    {
+        Nivel n = niveles[nivel];
+        return n.maximos[especie][n.indice(i)];
+    }
+
+    /**
+     * @return La media de la especie en la ventana de la entrada dada.
+     */
+    public double getMedia(int nivel, int i, int especie)
+    {
+        Nivel n = niveles[nivel];
+        return (double) n.sumas[especie][n.indice(i)] / n.ventana;
+    }
+
+    /**
+     * Un anillo de entradas que resumen ventanas del mismo largo, y la
+     * ventana que se está acumulando.
+     */
+    private static class Nivel
+    {
+        private final int ventana;
+        // Por entrada: el primer paso; por especie y entrada: mínimo,
+        // máximo y suma.
+        private final int[] pasos;
+        private final int[][] minimos;
+        private final int[][] maximos;
+        private final long[][] sumas;
+        // Donde va la próxima entrada, y cuántas hay.
+        private int siguiente;
+        private int tamanio;
+        // La ventana en curso: cuántas entradas del nivel anterior lleva,
+        // desde qué paso, y sus valores por especie.
+        private int acumuladas;
+        private int pasoAcumulado;
+        private final int[] minimoAcumulado;
+        private final int[] maximoAcumulado;
+        private final long[] sumaAcumulada;
+
+        private Nivel(int ventana)
+        {
+            this.ventana = ventana;
+            pasos = new int[CAPACIDAD];
+            minimos = new int[Especie.CANTIDAD][CAPACIDAD];
+            maximos = new int[Especie.CANTIDAD][CAPACIDAD];
+            sumas = new long[Especie.CANTIDAD][CAPACIDAD];
+            minimoAcumulado = new int[Especie.CANTIDAD];
+            maximoAcumulado = new int[Especie.CANTIDAD];
+            sumaAcumulada = new long[Especie.CANTIDAD];
+        }
+
+        /**
+         * Ocupa la próxima entrada, reemplazando a la más antigua si el
+         * anillo está lleno.
+         * @return El índice de la entrada.
+         */
+        private int reservar(int paso)
+        {
+            int i = siguiente;
+            pasos[i] = paso;
+            siguiente = (i + 1) % CAPACIDAD;
+            if(tamanio < CAPACIDAD) {
+                tamanio++;
+            }
+            return i;
+        }
+
+        /**
+         * @return El índice en los arreglos de la entrada i, contando
+         *         desde la más antigua.
+         */
+        private int indice(int i)
+        {
+            if(i < 0 || i >= tamanio) {
+                throw new IndexOutOfBoundsException("Entrada " + i + ", tamaño " + tamanio);
+            }
+            return (siguiente - tamanio + i + CAPACIDAD) % CAPACIDAD;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+import java.util.Arrays;
+
+/**
+ * Cuenta cuántas posiciones de cada especie hay en un rectángulo del
+ * campo sin recorrerlo. Divide el campo en baldosas cuadradas y guarda,
+ * por especie, las sumas acumuladas de las cantidades de las baldosas
+ * (una tabla de áreas sumadas): la cuenta de cualquier rectángulo de
+ * baldosas completas sale de cuatro valores. Para las posiciones de los
+ * bordes del rectángulo que no cubren una baldosa entera guarda además,
+ * por especie y por posición, cuántas hay en su fila desde el principio
+ * de su baldosa, así que cada fila del borde se cuenta con una resta por
+ * baldosa que toca: el borde cuesta del orden de las filas más las
+ * columnas del rectángulo, cualquiera sea el lado.
+ * Con baldosas de lado 1 no hay bordes y sólo se guardan las sumas, un
+ * int por especie y posición; con baldosas más grandes las sumas ocupan
+ * poco y las cuentas por fila, un short por especie y posición.
+ * Las cuentas de cada baldosa sirven también para dibujar mapas de
+ * densidad.
+ * El índice se reconstruye al consultarlo si el campo se selló (al
+ * terminar cada paso) o la hierba cambió desde la última vez, con un
+ * costo que depende de la población y de la cantidad de baldosas y, si
+ * el lado es mayor que 1, del área del campo. Puede compartirse entre el
+ * campo y el campo actualizado.
+ */
+public class IndiceDeDensidad
+{
+    private final int largo, ancho;
+    // El lado de las baldosas, y cuántas hay en cada dirección; las de
+    // la última fila y columna pueden ser más chicas.
+    private final int lado;
+    private final int filasDeBaldosas, columnasDeBaldosas;
+    // Por especie: las sumas acumuladas de las baldosas, con una fila y
+    // una columna de ceros al principio; no pasan del área del campo.
+    private final int[][] acumuladas;
+    // Por especie y posición, fila por fila: cuántas hay en la fila desde
+    // el principio de la baldosa hasta la posición, incluida. Es null con
+    // baldosas de lado 1.
+    private final short[][] enFila;
+    // El campo del que se construyó el índice, o null si hay que
+    // reconstruirlo, y los cambios de su hierba en ese momento.
+    private Campo indexado;
+    private int cambiosDeHierba;
+
+    /**
+     * Crea un índice para un campo de las dimensiones dadas.
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     * @param lado El lado de las baldosas, entre 1 y Short.MAX_VALUE.
+     */
+    public IndiceDeDensidad(int largo, int ancho, int lado)
+    {
+        if(lado <= 0 || lado > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("El lado de las baldosas debe estar entre 1 y "
+                                               + Short.MAX_VALUE + ": " + lado);
+        }
+        this.largo = largo;
+        this.ancho = ancho;
+        this.lado = lado;
+        filasDeBaldosas = (largo + lado - 1) / lado;
+        columnasDeBaldosas = (ancho + lado - 1) / lado;
+        long sumas = (long) (filasDeBaldosas + 1) * (columnasDeBaldosas + 1);
+        if(sumas > Integer.MAX_VALUE || (lado > 1 && (long) largo * ancho > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Un campo de " + largo + "x" + ancho
+                                               + " es demasiado grande para un índice con baldosas de lado "
+                                               + lado);
+        }
+        acumuladas = new int[Especie.CANTIDAD][];
+        enFila = lado > 1 ? new short[Especie.CANTIDAD][] : null;
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            acumuladas[especie] = new int[(int) sumas];
+            if(enFila != null) {
+                enFila[especie] = new short[largo * ancho];
+            }
+        }
+    }
+
+    /**
+     * Indica que el contenido del campo cambió y hay que reconstruir el
+     * índice antes de la próxima consulta.
+     */
+    public void invalidar()
+    {
+        indexado = null;
+    }
+
+    /**
+     * Cuenta las posiciones de una especie en un rectángulo del campo,
+     * como las informa Campo.getEspecieEn.
+     * @param campo El campo, de las dimensiones del índice.
+     * @param especie Un código de especie distinto de Especie.VACIO.
+     * @param fila La primera fila del rectángulo.
+     * @param columna La primera columna del rectángulo.
+     * @param filas La cantidad de filas del rectángulo.
+     * @param columnas La cantidad de columnas del rectángulo.
+     * @return La cantidad de posiciones de la especie en el rectángulo.
+     */
+    public long contar(Campo campo, int especie, int fila, int columna, int filas, int columnas)
+    {
+        validarEspecie(especie);
+        validarRegion(largo, ancho, fila, columna, filas, columnas);
+        if(filas == 0 || columnas == 0) {
+            return 0;
+        }
+        actualizar(campo);
+        int filaFinal = fila + filas;
+        int columnaFinal = columna + columnas;
+        // Las baldosas enteras dentro del rectángulo; la última baldosa
+        // cuenta como entera si el rectángulo llega al borde del campo.
+        int primeraFila = (fila + lado - 1) / lado;
+        int ultimaFila = filaFinal == largo ? filasDeBaldosas : filaFinal / lado;
+        int primeraColumna = (columna + lado - 1) / lado;
+        int ultimaColumna = columnaFinal == ancho ? columnasDeBaldosas : columnaFinal / lado;
+        if(primeraFila >= ultimaFila || primeraColumna >= ultimaColumna) {
+            return contarFilas(especie, fila, filaFinal, columna, columnaFinal);
+        }
+        long cantidad = sumaDeBaldosas(especie, primeraFila, primeraColumna, ultimaFila, ultimaColumna);
+        // El contorno que no cubre baldosas enteras: las filas de arriba y
+        // de abajo completas, y los costados entre ellas.
+        int filaInterior = primeraFila * lado;
+        int filaExterior = Math.min(ultimaFila * lado, largo);
+        int columnaInterior = primeraColumna * lado;
+        int columnaExterior = Math.min(ultimaColumna * lado, ancho);
+        cantidad += contarFilas(especie, fila, filaInterior, columna, columnaFinal);
+        cantidad += contarFilas(especie, filaExterior, filaFinal, columna, columnaFinal);
+        cantidad += contarFilas(especie, filaInterior, filaExterior, columna, columnaInterior);
+        cantidad += contarFilas(especie, filaInterior, filaExterior, columnaExterior, columnaFinal);
+        return cantidad;
+    }
+
+    /**
+     * @return La cantidad de la especie en las baldosas de las filas y
+     *         columnas dadas, iniciales incluidas y finales excluidas.
+     */
+    private int sumaDeBaldosas(int especie, int primeraFila, int primeraColumna, int ultimaFila, int ultimaColumna)
+    {
+        int[] sumas = acumuladas[especie];
+        int ancho1 = columnasDeBaldosas + 1;
+        return sumas[ultimaFila * ancho1 + ultimaColumna] - sumas[primeraFila * ancho1 + ultimaColumna]
+               - sumas[ultimaFila * ancho1 + primeraColumna] + sumas[primeraFila * ancho1 + primeraColumna];
+    }
+
+    /**
+     * Cuenta las posiciones de una especie en un rectángulo, dado por sus
+     * filas y columnas inicial (incluida) y final (excluida), con las
+     * cuentas por fila: una resta por fila y por baldosa que toca.
+     */
+    private long contarFilas(int especie, int filaInicial, int filaFinal, int columnaInicial, int columnaFinal)
+    {
+        if(filaInicial >= filaFinal || columnaInicial >= columnaFinal) {
+            return 0;
+        }
+        short[] cuentas = enFila[especie];
+        long cantidad = 0;
+        for(int fila = filaInicial; fila < filaFinal; fila++) {
+            int inicioDeFila = fila * ancho;
+            int columna = columnaInicial;
+            while(columna < columnaFinal) {
+                int fin = Math.min((columna / lado + 1) * lado, columnaFinal);
+                cantidad += cuentas[inicioDeFila + fin - 1];
+                if(columna % lado != 0) {
+                    cantidad -= cuentas[inicioDeFila + columna - 1];
+                }
+                columna = fin;
+            }
+        }
+        return cantidad;
+    }
+
+    /**
+     * Copia la cantidad de una especie en cada baldosa, para dibujar un
+     * mapa de densidad.
+     * @param campo El campo, de las dimensiones del índice.
+     * @param especie Un código de especie distinto de Especie.VACIO.
+     * @param destino Recibe las cantidades fila por fila; debe tener
+     *                lugar para todas las baldosas.
+     */
+    public void copiarDensidades(Campo campo, int especie, int[] destino)
+    {
+        validarEspecie(especie);
+        actualizar(campo);
+        for(int f = 0; f < filasDeBaldosas; f++) {
+            for(int c = 0; c < columnasDeBaldosas; c++) {
+                destino[f * columnasDeBaldosas + c] = sumaDeBaldosas(especie, f, c, f + 1, c + 1);
+            }
+        }
+    }
+
+    /**
+     * @return El lado de las baldosas.
+     */
+    public int getLado()
+    {
+        return lado;
+    }
+
+    /**
+     * @return La cantidad de filas de baldosas.
+     */
+    public int getFilasDeBaldosas()
+    {
+        return filasDeBaldosas;
+    }
+
+    /**
+     * @return La cantidad de columnas de baldosas.
+     */
+    public int getColumnasDeBaldosas()
+    {
+        return columnasDeBaldosas;
+    }
+
+    /**
+     * Reconstruye el índice si no es del estado actual del campo.
+     */
+    private void actualizar(Campo campo)
+    {
+        Hierba hierba = campo.getHierba();
+        int cambios = hierba != null ? hierba.getCambios() : 0;
+        if(campo == indexado && cambios == cambiosDeHierba) {
+            return;
+        }
+        // Primero cada baldosa cuenta lo suyo en la posición de sus sumas,
+        // y cada posición ocupada queda marcada con un 1 en su especie.
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            Arrays.fill(acumuladas[especie], 0);
+            if(enFila != null) {
+                Arrays.fill(enFila[especie], (short) 0);
+            }
+        }
+        campo.recorrerOcupadas(new VisitanteDeCeldas() {
+            public void visitar(int fila, int columna, Animal animal)
+            {
+                agregar(animal.getEspecie(), fila, columna);
+            }
+        });
+        if(hierba != null && hierba.getCantidad() > 0) {
+            hierba.recorrer(new Hierba.VisitanteDeHierba() {
+                public void visitar(int fila, int columna, int nivel)
+                {
+                    // Los animales tapan a la hierba de su posición.
+                    if(campo.getAnimalEn(fila, columna) == null) {
+                        agregar(Especie.HIERBA, fila, columna);
+                    }
+                }
+            });
+        }
+        int ancho1 = columnasDeBaldosas + 1;
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            int[] sumas = acumuladas[especie];
+            for(int f = 1; f <= filasDeBaldosas; f++) {
+                for(int c = 1; c <= columnasDeBaldosas; c++) {
+                    sumas[f * ancho1 + c] += sumas[(f - 1) * ancho1 + c] + sumas[f * ancho1 + c - 1]
+                                             - sumas[(f - 1) * ancho1 + c - 1];
+                }
+            }
+            if(enFila != null) {
+                short[] cuentas = enFila[especie];
+                for(int fila = 0; fila < largo; fila++) {
+                    int inicioDeFila = fila * ancho;
+                    for(int columna = 1; columna < ancho; columna++) {
+                        if(columna % lado != 0) {
+                            cuentas[inicioDeFila + columna] += cuentas[inicioDeFila + columna - 1];
+                        }
+                    }
+                }
+            }
+        }
+        indexado = campo;
+        cambiosDeHierba = cambios;
+    }
+
+    /**
+     * Cuenta una posición de la especie antes de acumular las sumas.
+     */
+    private void agregar(int especie, int fila, int columna)
+    {
+        acumuladas[especie][(fila / lado + 1) * (columnasDeBaldosas + 1) + columna / lado + 1]++;
+        if(enFila != null) {
+            enFila[especie][fila * ancho + columna] = 1;
+        }
+    }
+
+    /**
+     * Cuenta una por una las posiciones de una especie en un rectángulo,
+     * dado por sus filas y columnas inicial (incluida) y final (excluida).
+     */
+    static long contarCeldas(Campo campo, int especie, int filaInicial, int columnaInicial,
+                             int filaFinal, int columnaFinal)
+    {
+        long cantidad = 0;
+        for(int fila = filaInicial; fila < filaFinal; fila++) {
+            for(int columna = columnaInicial; columna < columnaFinal; columna++) {
+                if(campo.getEspecieEn(fila, columna) == especie) {
+                    cantidad++;
+                }
+            }
+        }
+        return cantidad;
+    }
+
+    private static void validarEspecie(int especie)
+    {
+        if(especie <= Especie.VACIO || especie >= Especie.CANTIDAD) {
+            throw new IllegalArgumentException("Especie sin índice: " + especie);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException Si el rectángulo no está dentro
+     *         de un campo de las dimensiones dadas.
+     */
+    static void validarRegion(int largo, int ancho, int fila, int columna, int filas, int columnas)
+    {
+        if(fila < 0 || columna < 0 || filas < 0 || columnas < 0
+                || (long) fila + filas > largo || (long) columna + columnas > ancho) {
+            throw new IllegalArgumentException("Región fuera del campo: " + filas + "x" + columnas
+                                               + " desde (" + fila + ", " + columna + ")");
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Recorre un archivo escrito por DiarioDeEventos de principio a fin,
+ * leyéndolo de a bloques, sin cargarlo en memoria; sirve para resumir
+ * diarios de cualquier tamaño.
+ * Uso: java LectorDeDiario archivo
+ * muestra la cantidad de eventos de cada causa y especie.
+ */
+public class LectorDeDiario
+{
+    // Tamaño del bloque que se lee de una vez.
+    private static final int TAMANIO_DEL_BLOQUE = 1 << 20;
+
+    /**
+     * Recibe los eventos de un diario.
+     */
+    public interface VisitanteDeEventos
+    {
+        /**
+         * @param paso El paso en que ocurrió el evento.
+         * @param causa Un código de CausaDeEvento.
+         * @param especie El código de especie del animal.
+         * @param fila La fila donde ocurrió.
+         * @param columna La columna donde ocurrió.
+         */
+        void visitar(int paso, int causa, int especie, int fila, int columna);
+    }
+
+    private final FileChannel canal;
+    private final ByteBuffer bloque;
+
+    private LectorDeDiario(FileChannel canal)
+    {
+        this.canal = canal;
+        bloque = ByteBuffer.allocateDirect(TAMANIO_DEL_BLOQUE);
+        bloque.limit(0);
+    }
+
+    /**
+     * Recorre todos los eventos del diario, en el orden en que se
+     * registraron.
+     * @param archivo El archivo del diario.
+     * @param visitante Recibe cada evento.
+     * @return La cantidad de eventos leídos.
+     */
+    public static long leer(Path archivo, VisitanteDeEventos visitante)
+    {
+        try(FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            return new LectorDeDiario(canal).leerEventos(visitante, archivo);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo leer el diario " + archivo, e);
+        }
+    }
+
+    private long leerEventos(VisitanteDeEventos visitante, Path archivo) throws IOException
+    {
+        if(!llenar(4) || bloque.getInt() != DiarioDeEventos.MAGICO) {
+            throw new IllegalArgumentException(archivo + " no es un diario de eventos.");
+        }
+        int mascaraDeEspecie = (1 << DiarioDeEventos.BITS_DE_ESPECIE) - 1;
+        long total = 0;
+        while(llenar(1)) {
+            int paso = leerVarint();
+            int cantidad = leerVarint();
+            for(int i = 0; i < cantidad; i++) {
+                int tipo = leerByte();
+                int fila = leerVarint();
+                int columna = leerVarint();
+                visitante.visitar(paso, tipo >>> DiarioDeEventos.BITS_DE_ESPECIE, tipo & mascaraDeEspecie,
+                                  fila, columna);
+            }
+            total += cantidad;
+        }
+        return total;
+    }
+
+    private int leerByte() throws IOException
+    {
+        if(!llenar(1)) {
+            throw new EOFException("Diario incompleto.");
+        }
+        return bloque.get() & 0xFF;
+    }
+
+    private int leerVarint() throws IOException
+    {
+        int valor = 0;
+        for(int desplazamiento = 0; ; desplazamiento += 7) {
+            int b = leerByte();
+            valor |= (b & 0x7F) << desplazamiento;
+            if((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+    }
+
+    /**
+     * Lee del archivo hasta que queden al menos los bytes pedidos sin
+     * leer en el bloque.
+     * @return false si el archivo terminó antes.
+     */
+    private boolean llenar(int necesarios) throws IOException
+    {
+        if(bloque.remaining() >= necesarios) {
+            return true;
+        }
+        bloque.compact();
+        while(bloque.position() < necesarios) {
+            if(canal.read(bloque) < 0) {
+                bloque.flip();
+                return false;
+            }
+        }
+        bloque.flip();
+        return true;
+    }
+
+    public static void main(String[] args)
+    {
+        if(args.length < 1) {
+            System.out.println("Uso: java LectorDeDiario archivo");
+            return;
+        }
+        final long[][] cuentas = new long[CausaDeEvento.CANTIDAD][Especie.CANTIDAD];
+        final int[] ultimoPaso = new int[1];
+        long total = leer(Paths.get(args[0]), new VisitanteDeEventos() {
+            public void visitar(int paso, int causa, int especie, int fila, int columna)
+            {
+                cuentas[causa][especie]++;
+                ultimoPaso[0] = paso;
+            }
+        });
+        System.out.println(total + " eventos hasta el paso " + ultimoPaso[0]);
+        for(int causa = 0; causa < CausaDeEvento.CANTIDAD; causa++) {
+            for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+                if(cuentas[causa][especie] > 0) {
+                    System.out.println(CausaDeEvento.getNombre(causa) + " " + Especie.getNombre(especie)
+                                       + ": " + cuentas[causa][especie]);
+                }
+            }
+        }
+    }
+}
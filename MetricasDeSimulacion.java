@@ -0,0 +1,310 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Mide dónde se va el tiempo de cada paso de la simulación: un
+ * histograma de duraciones por fase y otro del paso completo, junto con
+ * la población, los nacimientos y muertes por segundo y los bytes que
+ * asigna el hilo de la simulación en cada paso. Se publica como MBean
+ * en el servidor de la plataforma, así se puede mirar con jconsole una
+ * simulación larga sin detenerla.
+ * Las mediciones las hace el hilo de la simulación; los nacimientos y
+ * las muertes los cuenta el campo en un ContadorDeEventos. Sin métricas el
+ * simulador sólo compara una referencia con null en cada fase.
+ */
+public class MetricasDeSimulacion implements MetricasDeSimulacionMBean
+{
+    // Las fases de un paso, en el orden en que ocurren.
+    // Los animales actúan, o el motor ejecuta el paso completo.
+    public static final int ACTUAR = 0;
+    // Se quitan de la población los muertos; los nacidos ya se agregaron
+    // al actuar. Los motores lo hacen dentro de ACTUAR.
+    public static final int COMPACTAR = 1;
+    // Se cierra el paso en el diario, se intercambian los campos y se
+    // limpia el anterior.
+    public static final int INTERCAMBIO = 2;
+    public static final int HIERBA = 3;
+    public static final int ESTADISTICAS = 4;
+    // Los observadores muestran el estado.
+    public static final int VISTA = 5;
+    public static final int FASES = 6;
+
+    private static final String[] NOMBRES = { "Actuar", "Compactar", "Intercambio", "Hierba", "Estadisticas",
+                                              "Vista" };
+    // Cada cuántos nanosegundos se recalculan los eventos por segundo.
+    private static final long PERIODO_DE_TASAS = 1000000000L;
+    // Numera los MBeans de los simuladores de un mismo proceso.
+    private static final AtomicInteger SIMULADORES = new AtomicInteger();
+
+    private final HistogramaDeLatencia[] porFase;
+    private final HistogramaDeLatencia pasos;
+    // Cuándo empezó el paso y cuándo terminó la última fase medida.
+    private long inicioDelPaso;
+    private long finDeFase;
+    private final ContadorDeEventos eventos;
+    // Los eventos y el momento de la última vez que se calcularon las tasas.
+    private long nacimientosAnteriores, muertesAnteriores;
+    private long momentoAnterior;
+    private volatile double nacimientosPorSegundo, muertesPorSegundo;
+    // Para medir lo asignado por el hilo de la simulación, o null si la
+    // máquina virtual no lo permite.
+    private final com.sun.management.ThreadMXBean hilos;
+    private long asignadosAlIniciar;
+    private volatile long asignadosEnElUltimoPaso;
+    private long asignadosEnTotal;
+    private volatile long pasosMedidos;
+    private volatile int paso;
+    private volatile int conejos, zorros, hierba;
+    // Si se pidió reiniciar desde otro hilo.
+    private volatile boolean reinicioPendiente;
+    private ObjectName nombre;
+
+    /**
+     * Crea métricas vacías, sin publicarlas.
+     * @param eventos Donde el campo cuenta los nacimientos y muertes.
+     */
+    public MetricasDeSimulacion(ContadorDeEventos eventos)
+    {
+        this.eventos = eventos;
+        porFase = new HistogramaDeLatencia[FASES];
+        for(int fase = 0; fase < FASES; fase++) {
+            porFase[fase] = new HistogramaDeLatencia();
+        }
+        pasos = new HistogramaDeLatencia();
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            hilos = (com.sun.management.ThreadMXBean) bean;
+            hilos.setThreadAllocatedMemoryEnabled(true);
+        }
+        else {
+            hilos = null;
+        }
+        nacimientosAnteriores = eventos.getNacimientos();
+        muertesAnteriores = eventos.getMuertes();
+        momentoAnterior = System.nanoTime();
+    }
+
+    /**
+     * Publica las métricas en el servidor de MBeans de la plataforma.
+     */
+    public void publicar()
+    {
+        try {
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            nombre = new ObjectName("Simulador:type=MetricasDeSimulacion,id="
+                                    + SIMULADORES.incrementAndGet());
+            servidor.registerMBean(this, nombre);
+        }
+        catch(JMException e) {
+            throw new IllegalStateException("No se pudieron publicar las métricas", e);
+        }
+    }
+
+    /**
+     * Quita las métricas del servidor de MBeans, si estaban publicadas.
+     */
+    public void retirar()
+    {
+        if(nombre != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(nombre);
+            }
+            catch(JMException e) {
+                throw new IllegalStateException("No se pudieron retirar las métricas", e);
+            }
+            nombre = null;
+        }
+    }
+
+    /**
+     * Marca el comienzo de un paso.
+     */
+    public void iniciarPaso()
+    {
+        if(reinicioPendiente) {
+            reinicioPendiente = false;
+            for(HistogramaDeLatencia histograma : porFase) {
+                histograma.reiniciar();
+            }
+            pasos.reiniciar();
+            asignadosEnTotal = 0;
+            pasosMedidos = 0;
+        }
+        if(hilos != null) {
+            asignadosAlIniciar = hilos.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        inicioDelPaso = System.nanoTime();
+        finDeFase = inicioDelPaso;
+    }
+
+    /**
+     * Marca el fin de una fase, que empezó al terminar la anterior.
+     * @param fase Una de las fases.
+     */
+    public void terminarFase(int fase)
+    {
+        long ahora = System.nanoTime();
+        porFase[fase].agregar(ahora - finDeFase);
+        finDeFase = ahora;
+    }
+
+    /**
+     * Marca el fin del paso y toma la población del campo.
+     * @param paso El paso que terminó.
+     * @param campo El campo actual.
+     */
+    public void terminarPaso(int paso, Campo campo)
+    {
+        long ahora = System.nanoTime();
+        pasos.agregar(ahora - inicioDelPaso);
+        if(hilos != null) {
+            long asignados = hilos.getThreadAllocatedBytes(Thread.currentThread().getId()) - asignadosAlIniciar;
+            asignadosEnElUltimoPaso = asignados;
+            asignadosEnTotal += asignados;
+        }
+        pasosMedidos++;
+        this.paso = paso;
+        conejos = campo.getCantidad(Especie.CONEJO);
+        zorros = campo.getCantidad(Especie.ZORRO);
+        hierba = campo.getCantidad(Especie.HIERBA);
+        long transcurrido = ahora - momentoAnterior;
+        if(transcurrido >= PERIODO_DE_TASAS) {
+            long nacidos = eventos.getNacimientos();
+            long muertos = eventos.getMuertes();
+            nacimientosPorSegundo = (nacidos - nacimientosAnteriores) * 1e9 / transcurrido;
+            muertesPorSegundo = (muertos - muertesAnteriores) * 1e9 / transcurrido;
+            nacimientosAnteriores = nacidos;
+            muertesAnteriores = muertos;
+            momentoAnterior = ahora;
+        }
+    }
+
+    /**
+     * @param fase Una de las fases.
+     * @return El histograma de las duraciones de la fase.
+     */
+    public HistogramaDeLatencia getHistograma(int fase)
+    {
+        return porFase[fase];
+    }
+
+    public int getPaso()
+    {
+        return paso;
+    }
+
+    public int getConejos()
+    {
+        return conejos;
+    }
+
+    public int getZorros()
+    {
+        return zorros;
+    }
+
+    public int getHierba()
+    {
+        return hierba;
+    }
+
+    public double getNacimientosPorSegundo()
+    {
+        return nacimientosPorSegundo;
+    }
+
+    public double getMuertesPorSegundo()
+    {
+        return muertesPorSegundo;
+    }
+
+    /**
+     * @return Los bytes que asignó el hilo de la simulación en el último
+     *         paso, o -1 si no se pueden medir. No incluye lo que asignan
+     *         los hilos de los motores en paralelo.
+     */
+    public long getBytesAsignadosEnElUltimoPaso()
+    {
+        return hilos != null ? asignadosEnElUltimoPaso : -1;
+    }
+
+    /**
+     * @return El promedio de bytes asignados por paso, o -1 si no se
+     *         pueden medir.
+     */
+    public long getBytesAsignadosPorPaso()
+    {
+        long medidos = pasosMedidos;
+        if(hilos == null) {
+            return -1;
+        }
+        return medidos > 0 ? asignadosEnTotal / medidos : 0;
+    }
+
+    public String[] getFases()
+    {
+        return NOMBRES.clone();
+    }
+
+    public long[] getMedianaPorFase()
+    {
+        return percentiles(50);
+    }
+
+    public long[] getPercentil99PorFase()
+    {
+        return percentiles(99);
+    }
+
+    public long[] getMaximoPorFase()
+    {
+        long[] maximos = new long[FASES];
+        for(int fase = 0; fase < FASES; fase++) {
+            maximos[fase] = porFase[fase].getMaximo();
+        }
+        return maximos;
+    }
+
+    private long[] percentiles(double percentil)
+    {
+        long[] valores = new long[FASES];
+        for(int fase = 0; fase < FASES; fase++) {
+            valores[fase] = porFase[fase].getPercentil(percentil);
+        }
+        return valores;
+    }
+
+    public long getMedianaDelPaso()
+    {
+        return pasos.getPercentil(50);
+    }
+
+    public long getPercentil99DelPaso()
+    {
+        return pasos.getPercentil(99);
+    }
+
+    public long getMaximoDelPaso()
+    {
+        return pasos.getMaximo();
+    }
+
+    public long getPasosMedidos()
+    {
+        return pasosMedidos;
+    }
+
+    /**
+     * Pide vaciar los histogramas; lo hace el hilo de la simulación al
+     * empezar el próximo paso, para no escribirlos desde dos hilos.
+     */
+    public void reiniciar()
+    {
+        reinicioPendiente = true;
+    }
+}
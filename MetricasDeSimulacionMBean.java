@@ -0,0 +1,43 @@
+/**
+ * Lo que MetricasDeSimulacion muestra por JMX. Las duraciones están en
+ * nanosegundos; los arreglos por fase siguen el orden de getFases.
+ */
+public interface MetricasDeSimulacionMBean
+{
+    int getPaso();
+
+    int getConejos();
+
+    int getZorros();
+
+    int getHierba();
+
+    double getNacimientosPorSegundo();
+
+    double getMuertesPorSegundo();
+
+    long getBytesAsignadosEnElUltimoPaso();
+
+    long getBytesAsignadosPorPaso();
+
+    String[] getFases();
+
+    long[] getMedianaPorFase();
+
+    long[] getPercentil99PorFase();
+
+    long[] getMaximoPorFase();
+
+    long getMedianaDelPaso();
+
+    long getPercentil99DelPaso();
+
+    long getMaximoDelPaso();
+
+    long getPasosMedidos();
+
+    /**
+     * Vacía los histogramas y los promedios antes del próximo paso.
+     */
+    void reiniciar();
+}
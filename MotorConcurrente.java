@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.random.RandomGenerator;
+
+/**
+ * Ejecuta cada paso de la simulación en varios hilos sobre un
+ * CampoConcurrente. La lista de animales se divide en tramos contiguos
+ * sin mirar dónde está cada animal: los conflictos por una misma
+ * posición los resuelve el campo de forma atómica. A diferencia de
+ * MotorParalelo, el resultado depende del orden en que los hilos
+ * reclaman las posiciones, por lo que no es reproducible; aun así cada
+ * tramo usa su propio flujo aleatorio, derivado de la semilla, para
+ * que los hilos no compartan generador.
+ */
+public class MotorConcurrente implements MotorDeSimulacion
+{
+    // Tramos por hilo, para que el robo de trabajo equilibre la carga.
+    private static final int TRAMOS_POR_HILO = 4;
+
+    // Los hilos que ejecutan los tramos.
+    private ForkJoinPool hilos;
+
+    /**
+     * @param cantidadDeHilos La cantidad de hilos a usar.
+     */
+    public MotorConcurrente(int cantidadDeHilos)
+    {
+        hilos = new ForkJoinPool(cantidadDeHilos);
+    }
+
+    /**
+     * Hace actuar una vez a todos los animales. Al terminar, la lista
+     * contiene a los sobrevivientes en el mismo orden que antes, seguidos
+     * de los recién nacidos.
+     * @param paso El número del paso que se ejecuta.
+     * @param semilla La semilla de los generadores de cada tramo.
+     * @param animales Los animales de la simulación.
+     * @param campo El campo en el estado inicial.
+     * @param campoActualizado El campo al que se trasladan los animales;
+     *                         debe ser un CampoConcurrente.
+     */
+    public void simularPaso(int paso, long semilla, Poblacion animales, Campo campo, Campo campoActualizado)
+    {
+        if(!(campoActualizado instanceof CampoConcurrente)) {
+            throw new IllegalStateException("El motor concurrente necesita un CampoConcurrente.");
+        }
+        Animal[] todos = animales.toArray(new Animal[animales.size()]);
+        int cantidadDeTramos = Math.max(1, Math.min(todos.length, hilos.getParallelism() * TRAMOS_POR_HILO));
+        List<Tramo> tramos = new ArrayList<Tramo>(cantidadDeTramos);
+        for(int t = 0; t < cantidadDeTramos; t++) {
+            tramos.add(new Tramo(Azar.flujo(semilla, paso, t), todos, (int) ((long) todos.length * t / cantidadDeTramos),
+                                 (int) ((long) todos.length * (t + 1) / cantidadDeTramos),
+                                 campo, campoActualizado));
+        }
+        hilos.invoke(new RecursiveAction() {
+            protected void compute()
+            {
+                ForkJoinTask.invokeAll(tramos);
+            }
+        });
+
+        // Quita a los muertos y agrega a los recién nacidos.
+        animales.compactar();
+        for(Tramo tramo : tramos) {
+            animales.addAll(tramo.nacidos);
+        }
+    }
+
+    /**
+     * @return La cantidad de hilos del motor.
+     */
+    public int getCantidadDeHilos()
+    {
+        return hilos.getParallelism();
+    }
+
+    /**
+     * Termina los hilos del motor.
+     */
+    public void cerrar()
+    {
+        hilos.shutdown();
+    }
+
+    /**
+     * Hace actuar a los animales de un tramo de la lista.
+     */
+    private static class Tramo extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final RandomGenerator generador;
+        private final Animal[] animales;
+        private final int desde, hasta;
+        private final Campo campo, campoActualizado;
+        private final List<Animal> nacidos;
+
+        private Tramo(RandomGenerator generador, Animal[] animales, int desde, int hasta,
+                      Campo campo, Campo campoActualizado)
+        {
+            this.generador = generador;
+            this.animales = animales;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.campo = campo;
+            this.campoActualizado = campoActualizado;
+            nacidos = new ArrayList<Animal>();
+        }
+
+        protected void compute()
+        {
+            RandomGenerator anterior = Azar.generador();
+            Azar.usar(generador);
+            try {
+                for(int i = desde; i < hasta; i++) {
+                    animales[i].act(campo, campoActualizado, nacidos);
+                }
+            }
+            finally {
+                Azar.usar(anterior);
+            }
+        }
+    }
+}
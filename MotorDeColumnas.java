@@ -0,0 +1,513 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * Ejecuta los pasos con el estado de los animales guardado en columnas
+ * de tipos primitivos (especie, edad, comida, posición y estado) en
+ * lugar de objetos Animal, y con dos grillas de enteros propias en
+ * lugar de los campos. Cada regla es un ciclo sobre las columnas:
+ * primero envejecen y pasan hambre todos a la vez; después, en el
+ * orden de la lista, cada uno se reproduce y se mueve o come.
+ * El envejecimiento se hace animal por animal; la versión sin saltos
+ * (ver setEnvejecimientoSinSaltos) es opcional porque en las mediciones
+ * de BancoDePruebasEnvejecimiento no resultó más rápida.
+ * Las reglas son las de Conejo y Zorro y consumen los números
+ * aleatorios en el mismo orden que el recorrido secuencial de
+ * Simulador, por lo que con la misma semilla el resultado es idéntico.
+ * Al terminar cada paso los resultados se copian a los objetos Animal,
+ * a la lista y al campo actualizado, así las estadísticas, los visores
+ * y los puntos de control siguen funcionando. Si la lista se modifica
+ * por fuera del motor, por ej. al restaurar, las columnas se vuelven a
+ * cargar desde la lista y el campo.
+ */
+public class MotorDeColumnas implements MotorDeSimulacion
+{
+    // Bits de la columna de estado.
+    static final byte VIVO = 1;
+    // Morirá al actuar en este paso, por vejez o por hambre.
+    private static final byte VENCIDO = 2;
+    private static final byte DE_HAMBRE = 4;
+    // Capacidad inicial de las columnas.
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    // Las reglas de cada especie, indexadas por código de especie.
+    private static final int[] EDAD_MAXIMA = new int[Especie.CANTIDAD];
+    private static final int[] EDAD_DE_REPRODUCCION = new int[Especie.CANTIDAD];
+    private static final double[] PROBABILIDAD_DE_REPRODUCCION = new double[Especie.CANTIDAD];
+    private static final int[] MAXIMO_TAMANIO_DE_CAMADA = new int[Especie.CANTIDAD];
+
+    static {
+        EDAD_MAXIMA[Especie.CONEJO] = Conejo.EDAD_MAX;
+        EDAD_DE_REPRODUCCION[Especie.CONEJO] = Conejo.EDAD_DE_REPRODUCCION;
+        PROBABILIDAD_DE_REPRODUCCION[Especie.CONEJO] = Conejo.PROBABILIDAD_DE_REPRODUCCION;
+        MAXIMO_TAMANIO_DE_CAMADA[Especie.CONEJO] = Conejo.MAXIMO_TAMANIO_DE_CAMADA;
+        EDAD_MAXIMA[Especie.ZORRO] = Zorro.EDAD_MAX;
+        EDAD_DE_REPRODUCCION[Especie.ZORRO] = Zorro.EDAD_DE_REPRODUCCION;
+        PROBABILIDAD_DE_REPRODUCCION[Especie.ZORRO] = Zorro.PROBABILIDAD_DE_REPRODUCCION;
+        MAXIMO_TAMANIO_DE_CAMADA[Especie.ZORRO] = Zorro.MAXIMO_TAMANIO_DE_CAMADA;
+    }
+
+    private int largo, ancho;
+
+    // Las columnas, una entrada por animal, en el orden de la lista.
+    private byte[] especie;
+    private byte[] estado;
+    private int[] edad;
+    private int[] comida;
+    // Posición como fila * ancho + columna.
+    private int[] posicion;
+    // El objeto Animal de cada entrada; null para los recién nacidos
+    // hasta que se copian los resultados.
+    private Animal[] objetos;
+    private int cantidad;
+
+    // Las grillas del campo actual y del actualizado: 0 si la posición
+    // está vacía, índice + 1 si la ocupa un animal, o -especie si la
+    // ocupa un animal muerto durante el paso anterior.
+    private int[] actual, siguiente;
+    // Las posiciones ocupadas de cada grilla, en el orden en que se
+    // ocuparon.
+    private int[] ocupadasActual, ocupadasSiguiente;
+    private int cantidadActual, cantidadSiguiente;
+    // Si las columnas reflejan la lista y el campo de la simulación.
+    private boolean cargado;
+    // La hierba del campo durante el paso, o null.
+    private Hierba hierba;
+    // Si se envejece con el núcleo sin saltos en lugar de animal por animal.
+    private boolean envejecimientoSinSaltos;
+
+    /**
+     * Crea un motor sin columnas cargadas; se cargan en el primer paso.
+     */
+    public MotorDeColumnas()
+    {
+        especie = new byte[CAPACIDAD_INICIAL];
+        estado = new byte[CAPACIDAD_INICIAL];
+        edad = new int[CAPACIDAD_INICIAL];
+        comida = new int[CAPACIDAD_INICIAL];
+        posicion = new int[CAPACIDAD_INICIAL];
+        objetos = new Animal[CAPACIDAD_INICIAL];
+    }
+
+    /**
+     * Hace actuar una vez a todos los animales.
+     * @param paso El número del paso que se ejecuta.
+     * @param semilla La semilla de la que se deriva el flujo del paso.
+     * @param animales Los animales de la simulación.
+     * @param campo El campo en el estado inicial.
+     * @param campoActualizado El campo al que se trasladan los animales.
+     */
+    public void simularPaso(int paso, long semilla, Poblacion animales, Campo campo, Campo campoActualizado)
+    {
+        if(!estaSincronizado(animales, campo)) {
+            cargar(animales, campo);
+        }
+        hierba = campoActualizado.getHierba();
+        RandomGenerator rand = Azar.flujo(semilla, paso, 0);
+        int existentes = cantidad;
+        envejecer(existentes);
+        for(int i = 0; i < existentes; i++) {
+            if((estado[i] & VIVO) != 0) {
+                actuar(i, rand, campoActualizado);
+            }
+        }
+        copiarResultados(animales, campoActualizado);
+        compactar();
+    }
+
+    /**
+     * Este motor no usa hilos.
+     */
+    public void cerrar()
+    {
+    }
+
+    /**
+     * Aumenta la edad y el hambre de todos los animales vivos y marca a
+     * los que morirán al actuar. Como la muerte se aplica recién en su
+     * turno, un zorro que actúa antes todavía puede comerse a un conejo
+     * que muere de viejo en este paso, igual que en el recorrido por
+     * objetos.
+     */
+    private void envejecer(int existentes)
+    {
+        if(envejecimientoSinSaltos) {
+            envejecer(especie, estado, edad, comida, existentes);
+        }
+        else {
+            envejecerPorAnimal(especie, estado, edad, comida, existentes);
+        }
+    }
+
+    /**
+     * Elige cómo envejecer a los animales en los pasos siguientes. El
+     * resultado es el mismo; sólo cambia la velocidad, que depende de la
+     * máquina y de la población (ver BancoDePruebasEnvejecimiento).
+     * @param sinSaltos true para usar envejecer, sin saltos; false, el
+     *                  valor inicial, para envejecerPorAnimal.
+     */
+    public void setEnvejecimientoSinSaltos(boolean sinSaltos)
+    {
+        envejecimientoSinSaltos = sinSaltos;
+    }
+
+    /**
+     * La regla de envejecer sobre las columnas dadas, sin saltos: cada
+     * condición se calcula como un 0 o un 1 con aritmética de enteros y
+     * se aplica multiplicando, de modo que todas las posiciones hacen las
+     * mismas operaciones y el compilador JIT puede procesar varias a la
+     * vez con instrucciones vectoriales. Da el mismo resultado que
+     * envejecerPorAnimal.
+     * @param cantidad Cuántas posiciones de las columnas procesar.
+     */
+    static void envejecer(byte[] especie, byte[] estado, int[] edad, int[] comida, int cantidad)
+    {
+        for(int i = 0; i < cantidad; i++) {
+            int vivo = estado[i] & VIVO;
+            // 1 si es un zorro.
+            int zorro = ((especie[i] ^ Especie.ZORRO) - 1) >>> 31;
+            int nuevaEdad = edad[i] + vivo;
+            int nuevaComida = comida[i] - (zorro & vivo);
+            edad[i] = nuevaEdad;
+            comida[i] = nuevaComida;
+            int edadMaxima = Conejo.EDAD_MAX + zorro * (Zorro.EDAD_MAX - Conejo.EDAD_MAX);
+            // 1 si pasó la edad máxima; 1 si es un zorro sin comida que no
+            // murió antes de viejo.
+            int vencido = (edadMaxima - nuevaEdad) >>> 31;
+            int hambre = zorro & ((nuevaComida - 1) >>> 31) & ~vencido;
+            estado[i] = (byte) (estado[i] | vivo * ((vencido | hambre) * VENCIDO | hambre * DE_HAMBRE));
+        }
+    }
+
+    /**
+     * La regla de envejecer escrita animal por animal, como en Conejo y
+     * Zorro. Es la que usa el motor salvo que se pida la versión sin
+     * saltos.
+     * @param cantidad Cuántas posiciones de las columnas procesar.
+     */
+    static void envejecerPorAnimal(byte[] especie, byte[] estado, int[] edad, int[] comida, int cantidad)
+    {
+        for(int i = 0; i < cantidad; i++) {
+            if((estado[i] & VIVO) != 0) {
+                int e = especie[i];
+                edad[i]++;
+                if(edad[i] > EDAD_MAXIMA[e]) {
+                    estado[i] |= VENCIDO;
+                }
+                if(e == Especie.ZORRO) {
+                    comida[i]--;
+                    if(comida[i] <= 0 && (estado[i] & VENCIDO) == 0) {
+                        estado[i] |= VENCIDO | DE_HAMBRE;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Las reglas de Conejo.act y Zorro.act para un animal vivo.
+     */
+    private void actuar(int i, RandomGenerator rand, Campo campoActualizado)
+    {
+        int e = especie[i];
+        int p = posicion[i];
+        if((estado[i] & VENCIDO) != 0) {
+            int causa = (estado[i] & DE_HAMBRE) != 0 ? CausaDeEvento.HAMBRE : CausaDeEvento.VEJEZ;
+            estado[i] = 0;
+            campoActualizado.registrarEvento(causa, e, p / ancho, p % ancho);
+            return;
+        }
+        int nacimientos = 0;
+        if(edad[i] >= EDAD_DE_REPRODUCCION[e] && rand.nextDouble() <= PROBABILIDAD_DE_REPRODUCCION[e]) {
+            nacimientos = rand.nextInt(MAXIMO_TAMANIO_DE_CAMADA[e]) + 1;
+        }
+        for(int n = 0; n < nacimientos; n++) {
+            int nacido = agregar(e);
+            ubicar(nacido, adyacentePorAzar(p, rand));
+            campoActualizado.registrarEvento(CausaDeEvento.NACIMIENTO, e, posicion[nacido] / ancho,
+                                             posicion[nacido] % ancho);
+        }
+        if(e == Especie.ZORRO) {
+            int presa = buscarComida(p, rand, campoActualizado);
+            if(presa >= 0) {
+                comida[i] = Zorro.VALOR_COMIDA_CONEJO;
+                ubicar(i, presa);
+                return;
+            }
+        }
+        int libre = adyacenteLibre(p, rand);
+        if(libre >= 0) {
+            ubicar(i, libre);
+        }
+        else {
+            estado[i] = 0;
+            campoActualizado.registrarEvento(CausaDeEvento.SUPERPOBLACION, e, p / ancho, p % ancho);
+        }
+    }
+
+    /**
+     * Como Campo.direccionAdyacentePorAzar: un desplazamiento de -1, 0 o
+     * +1 en cada eje; si cae fuera del campo, la misma posición.
+     */
+    private int adyacentePorAzar(int p, RandomGenerator rand)
+    {
+        int desplazamiento = rand.nextInt(9);
+        int fila = p / ancho + desplazamiento / 3 - 1;
+        int columna = p % ancho + desplazamiento % 3 - 1;
+        if(fila < 0 || fila >= largo || columna < 0 || columna >= ancho) {
+            return p;
+        }
+        return fila * ancho + columna;
+    }
+
+    /**
+     * Como Campo.direccionAdyacenteLibre, sobre la grilla siguiente.
+     * @return La posición libre, o -1 si no hay ninguna.
+     */
+    private int adyacenteLibre(int p, RandomGenerator rand)
+    {
+        int fila = p / ancho;
+        int columna = p % ancho;
+        int mascara = Vecindad.mascara(fila, columna, largo, ancho);
+        int ordenacion = rand.nextInt(Vecindad.ORDENACIONES);
+        for(int k = 0; k < Vecindad.DIRECCIONES; k++) {
+            int direccion = Vecindad.direccion(ordenacion, k);
+            if((mascara & (1 << direccion)) != 0) {
+                int vecina = p + Vecindad.deltaFila(direccion) * ancho + Vecindad.deltaColumna(direccion);
+                if(estaLibre(vecina)) {
+                    return vecina;
+                }
+            }
+        }
+        return estaLibre(p) ? p : -1;
+    }
+
+    /**
+     * @return true si la posición no tiene ocupante en la grilla
+     *         siguiente ni hierba.
+     */
+    private boolean estaLibre(int p)
+    {
+        return siguiente[p] == 0 && (hierba == null || !hierba.hayHierba(p));
+    }
+
+    /**
+     * Como Zorro.buscarComida, sobre la grilla actual: come el primer
+     * conejo vivo adyacente.
+     * @return La posición del conejo comido, o -1 si no encontró ninguno.
+     */
+    private int buscarComida(int p, RandomGenerator rand, Campo campoActualizado)
+    {
+        int fila = p / ancho;
+        int columna = p % ancho;
+        int mascara = Vecindad.mascara(fila, columna, largo, ancho);
+        int ordenacion = rand.nextInt(Vecindad.ORDENACIONES);
+        for(int k = 0; k < Vecindad.DIRECCIONES; k++) {
+            int direccion = Vecindad.direccion(ordenacion, k);
+            if((mascara & (1 << direccion)) != 0) {
+                int vecina = p + Vecindad.deltaFila(direccion) * ancho + Vecindad.deltaColumna(direccion);
+                int ocupante = actual[vecina] - 1;
+                if(ocupante >= 0 && especie[ocupante] == Especie.CONEJO && (estado[ocupante] & VIVO) != 0) {
+                    estado[ocupante] = 0;
+                    campoActualizado.registrarEvento(CausaDeEvento.DEPREDACION, Especie.CONEJO,
+                                                     vecina / ancho, vecina % ancho);
+                    return vecina;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Como Campo.ubicar: ocupa una posición de la grilla siguiente,
+     * reemplazando a su ocupante si lo hay.
+     */
+    private void ubicar(int i, int p)
+    {
+        if(siguiente[p] == 0) {
+            ocupadasSiguiente[cantidadSiguiente++] = p;
+        }
+        siguiente[p] = i + 1;
+        posicion[i] = p;
+    }
+
+    /**
+     * Agrega un recién nacido al final de las columnas.
+     * @return Su índice.
+     */
+    private int agregar(int e)
+    {
+        if(cantidad == especie.length) {
+            reservar(cantidad * 2);
+        }
+        int i = cantidad++;
+        especie[i] = (byte) e;
+        estado[i] = VIVO;
+        edad[i] = 0;
+        comida[i] = e == Especie.ZORRO ? Zorro.VALOR_COMIDA_CONEJO : 0;
+        objetos[i] = null;
+        return i;
+    }
+
+    /**
+     * Copia el estado de las columnas a los objetos Animal, creando los
+     * de los recién nacidos; rehace la lista en el mismo orden que el
+     * recorrido secuencial y ubica en el campo actualizado a los
+     * ocupantes de la grilla siguiente, en el orden en que ocuparon cada
+     * posición.
+     */
+    private void copiarResultados(Poblacion animales, Campo campoActualizado)
+    {
+        animales.clear();
+        animales.reservar(cantidad);
+        for(int i = 0; i < cantidad; i++) {
+            Animal animal = objetos[i];
+            if(animal == null) {
+                animal = especie[i] == Especie.ZORRO ? campoActualizado.nuevoZorro()
+                                                     : campoActualizado.nuevoConejo();
+                objetos[i] = animal;
+            }
+            animal.setEdad(edad[i]);
+            animal.setUbicacion(campoActualizado.getUbicacion(posicion[i] / ancho, posicion[i] % ancho));
+            if(especie[i] == Especie.ZORRO) {
+                ((Zorro) animal).setNivelDeComida(comida[i]);
+            }
+            if((estado[i] & VIVO) == 0) {
+                animal.setMuerto();
+            }
+            animales.add(animal);
+        }
+        for(int k = 0; k < cantidadSiguiente; k++) {
+            campoActualizado.ubicar(objetos[siguiente[ocupadasSiguiente[k]] - 1]);
+        }
+        // Entrega los muertos a la reserva, si la hay.
+        animales.compactar();
+    }
+
+    /**
+     * Quita de las columnas a los muertos, conservando el orden, deja en
+     * la grilla siguiente los nuevos índices y la convierte en la actual.
+     */
+    private void compactar()
+    {
+        int[] nuevoIndice = new int[cantidad];
+        int vivos = 0;
+        for(int i = 0; i < cantidad; i++) {
+            if((estado[i] & VIVO) != 0) {
+                nuevoIndice[i] = vivos;
+                especie[vivos] = especie[i];
+                estado[vivos] = VIVO;
+                edad[vivos] = edad[i];
+                comida[vivos] = comida[i];
+                posicion[vivos] = posicion[i];
+                objetos[vivos] = objetos[i];
+                vivos++;
+            }
+            else {
+                nuevoIndice[i] = -1;
+            }
+        }
+        for(int k = 0; k < cantidadSiguiente; k++) {
+            int p = ocupadasSiguiente[k];
+            int anterior = siguiente[p] - 1;
+            siguiente[p] = nuevoIndice[anterior] >= 0 ? nuevoIndice[anterior] + 1 : -especie[anterior];
+        }
+        Arrays.fill(objetos, vivos, cantidad, null);
+        cantidad = vivos;
+
+        // La grilla siguiente pasa a ser la actual y la actual se vacía.
+        for(int k = 0; k < cantidadActual; k++) {
+            actual[ocupadasActual[k]] = 0;
+        }
+        int[] grilla = actual;
+        actual = siguiente;
+        siguiente = grilla;
+        int[] ocupadas = ocupadasActual;
+        ocupadasActual = ocupadasSiguiente;
+        ocupadasSiguiente = ocupadas;
+        cantidadActual = cantidadSiguiente;
+        cantidadSiguiente = 0;
+    }
+
+    /**
+     * @return true si las columnas tienen a los mismos animales que la
+     *         lista, en el mismo orden, y el campo es de las mismas
+     *         dimensiones.
+     */
+    private boolean estaSincronizado(Poblacion animales, Campo campo)
+    {
+        if(!cargado || campo.getLargo() != largo || campo.getAncho() != ancho
+                || animales.size() != cantidad) {
+            return false;
+        }
+        for(int i = 0; i < cantidad; i++) {
+            if(animales.get(i) != objetos[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Carga las columnas desde la lista de animales y la grilla actual
+     * desde el campo, incluidos los ocupantes muertos.
+     */
+    private void cargar(Poblacion animales, Campo campo)
+    {
+        largo = campo.getLargo();
+        ancho = campo.getAncho();
+        long area = (long) largo * ancho;
+        if(area > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Campo demasiado grande para el motor de columnas: "
+                                               + largo + "x" + ancho);
+        }
+        actual = new int[(int) area];
+        siguiente = new int[(int) area];
+        ocupadasActual = new int[(int) area];
+        ocupadasSiguiente = new int[(int) area];
+        cantidadSiguiente = 0;
+
+        cantidad = 0;
+        reservar(animales.size());
+        final Map<Animal, Integer> indices = new IdentityHashMap<Animal, Integer>();
+        for(Animal animal : animales) {
+            int i = cantidad++;
+            Ubicacion ubicacion = animal.getUbicacion();
+            especie[i] = (byte) animal.getEspecie();
+            estado[i] = animal.estaVivo() ? VIVO : 0;
+            edad[i] = animal.getEdad();
+            comida[i] = animal instanceof Zorro ? ((Zorro) animal).getNivelDeComida() : 0;
+            posicion[i] = ubicacion.getFila() * ancho + ubicacion.getColumna();
+            objetos[i] = animal;
+            indices.put(animal, i);
+        }
+        cantidadActual = 0;
+        campo.recorrerOcupadas(new VisitanteDeCeldas() {
+            public void visitar(int fila, int columna, Animal animal)
+            {
+                int p = fila * ancho + columna;
+                Integer i = indices.get(animal);
+                actual[p] = i != null ? i + 1 : -animal.getEspecie();
+                ocupadasActual[cantidadActual++] = p;
+            }
+        });
+        cargado = true;
+    }
+
+    /**
+     * Agranda las columnas para que quepan la cantidad de animales dada.
+     */
+    private void reservar(int capacidad)
+    {
+        if(capacidad > especie.length) {
+            especie = Arrays.copyOf(especie, capacidad);
+            estado = Arrays.copyOf(estado, capacidad);
+            edad = Arrays.copyOf(edad, capacidad);
+            comida = Arrays.copyOf(comida, capacidad);
+            posicion = Arrays.copyOf(posicion, capacidad);
+            objetos = Arrays.copyOf(objetos, capacidad);
+        }
+    }
+}
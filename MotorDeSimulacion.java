@@ -0,0 +1,26 @@
+/**
+ * Una forma de ejecutar un paso de la simulación, alternativa al
+ * recorrido secuencial de Simulador.
+ */
+public interface MotorDeSimulacion
+{
+    /**
+     * Hace actuar una vez a todos los animales. Al terminar, la lista
+     * contiene a los sobrevivientes seguidos de los recién nacidos; los
+     * muertos se quitan con Poblacion.compactar.
+     * @param paso El número del paso que se ejecuta.
+     * @param semilla La semilla de la simulación, de la que se derivan
+     *                los flujos aleatorios del paso. Se pasa en cada paso
+     *                porque la simulación puede cambiarla, por ej. al
+     *                restaurar un punto de control.
+     * @param animales Los animales de la simulación.
+     * @param campo El campo en el estado inicial.
+     * @param campoActualizado El campo al que se trasladan los animales.
+     */
+    void simularPaso(int paso, long semilla, Poblacion animales, Campo campo, Campo campoActualizado);
+
+    /**
+     * Libera los recursos del motor, por ej. sus hilos.
+     */
+    void cerrar();
+}
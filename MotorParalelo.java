@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ejecuta cada paso de la simulación en varios hilos.
+ * El campo se divide en franjas horizontales y cada animal se asigna a
+ * la franja de la fila que ocupa al comenzar el paso. Como un animal
+ * sólo lee y escribe posiciones adyacentes a la suya, dos franjas no
+ * contiguas nunca tocan las mismas posiciones: primero actúan en
+ * paralelo todas las franjas pares y después todas las impares.
+ * Hay muchas más franjas que hilos, y el ForkJoinPool reparte las
+ * franjas entre los hilos robando trabajo, así las franjas densas no
+ * demoran el paso.
+ * Cada franja usa un generador aleatorio derivado de la semilla, el
+ * paso y el número de franja, por lo que con la misma semilla el
+ * resultado es el mismo cualquiera sea la cantidad de hilos.
+ */
+public class MotorParalelo implements MotorDeSimulacion
+{
+    // Alto mínimo de las franjas, en filas.
+    private static final int ALTO_MINIMO_DE_FRANJA = 8;
+
+    // Los hilos que ejecutan las franjas.
+    private ForkJoinPool hilos;
+
+    /**
+     * @param cantidadDeHilos La cantidad de hilos a usar.
+     */
+    public MotorParalelo(int cantidadDeHilos)
+    {
+        hilos = new ForkJoinPool(cantidadDeHilos);
+    }
+
+    /**
+     * Hace actuar una vez a todos los animales. Al terminar, la lista
+     * contiene a los sobrevivientes en el mismo orden que antes, seguidos
+     * de los recién nacidos de cada franja, en orden de franja.
+     * @param paso El número del paso que se ejecuta.
+     * @param semilla La semilla de los generadores de cada franja.
+     * @param animales Los animales de la simulación.
+     * @param campo El campo en el estado inicial.
+     * @param campoActualizado El campo al que se trasladan los animales.
+     */
+    public void simularPaso(int paso, long semilla, Poblacion animales, Campo campo, Campo campoActualizado)
+    {
+        int filasPorGrupo = campoActualizado.getFilasPorGrupo();
+        if(filasPorGrupo == 0) {
+            throw new IllegalStateException("El almacenamiento del campo no admite pasos en paralelo.");
+        }
+        int alto = altoDeFranja(filasPorGrupo);
+        int cantidadDeFranjas = (campo.getLargo() + alto - 1) / alto;
+
+        // Reparte los animales por franja conservando su orden relativo.
+        int[] inicio = new int[cantidadDeFranjas + 1];
+        for(Animal animal : animales) {
+            inicio[animal.getUbicacion().getFila() / alto + 1]++;
+        }
+        for(int f = 0; f < cantidadDeFranjas; f++) {
+            inicio[f + 1] += inicio[f];
+        }
+        Animal[] porFranja = new Animal[animales.size()];
+        int[] siguiente = inicio.clone();
+        for(Animal animal : animales) {
+            porFranja[siguiente[animal.getUbicacion().getFila() / alto]++] = animal;
+        }
+
+        List<List<Animal>> nacidos = new ArrayList<List<Animal>>(cantidadDeFranjas);
+        for(int f = 0; f < cantidadDeFranjas; f++) {
+            nacidos.add(new ArrayList<Animal>());
+        }
+        for(int fase = 0; fase < 2; fase++) {
+            List<Franja> franjas = new ArrayList<Franja>();
+            for(int f = fase; f < cantidadDeFranjas; f += 2) {
+                franjas.add(new Franja(semilla, paso, f, porFranja, inicio[f], inicio[f + 1],
+                                       campo, campoActualizado, nacidos.get(f)));
+            }
+            hilos.invoke(new Fase(franjas));
+        }
+
+        // Quita a los muertos y agrega a los recién nacidos.
+        animales.compactar();
+        for(List<Animal> nacidosEnFranja : nacidos) {
+            animales.addAll(nacidosEnFranja);
+        }
+    }
+
+    /**
+     * @return La cantidad de hilos del motor.
+     */
+    public int getCantidadDeHilos()
+    {
+        return hilos.getParallelism();
+    }
+
+    /**
+     * Termina los hilos del motor.
+     */
+    public void cerrar()
+    {
+        hilos.shutdown();
+    }
+
+    /**
+     * Calcula el alto de las franjas. Dos franjas de la misma fase están
+     * separadas por una franja completa, y un animal escribe a lo sumo
+     * una fila fuera de la suya; si el alto es múltiplo de filasPorGrupo
+     * y mide al menos dos grupos, las franjas de una misma fase nunca
+     * escriben en el mismo grupo de filas.
+     */
+    private static int altoDeFranja(int filasPorGrupo)
+    {
+        int alto = Math.max(ALTO_MINIMO_DE_FRANJA, 2 * filasPorGrupo);
+        return (alto + filasPorGrupo - 1) / filasPorGrupo * filasPorGrupo;
+    }
+
+    /**
+     * Ejecuta en paralelo las franjas de una fase.
+     */
+    private static class Fase extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Franja> franjas;
+
+        private Fase(List<Franja> franjas)
+        {
+            this.franjas = franjas;
+        }
+
+        protected void compute()
+        {
+            ForkJoinTask.invokeAll(franjas);
+        }
+    }
+
+    /**
+     * Hace actuar a los animales de una franja, en orden.
+     */
+    private class Franja extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long semilla;
+        private final int paso;
+        private final int numero;
+        private final Animal[] animales;
+        private final int desde, hasta;
+        private final Campo campo, campoActualizado;
+        private final List<Animal> nacidos;
+
+        private Franja(long semilla, int paso, int numero, Animal[] animales, int desde, int hasta,
+                       Campo campo, Campo campoActualizado, List<Animal> nacidos)
+        {
+            this.semilla = semilla;
+            this.paso = paso;
+            this.numero = numero;
+            this.animales = animales;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.campo = campo;
+            this.campoActualizado = campoActualizado;
+            this.nacidos = nacidos;
+        }
+
+        protected void compute()
+        {
+            if(desde == hasta) {
+                return;
+            }
+            RandomGenerator anterior = Azar.generador();
+            Azar.usar(Azar.flujo(semilla, paso, numero));
+            try {
+                for(int i = desde; i < hasta; i++) {
+                    animales[i].act(campo, campoActualizado, nacidos);
+                }
+            }
+            finally {
+                Azar.usar(anterior);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Recibe el estado del campo a medida que avanza la simulación, por
+ * ej. para mostrarlo en pantalla. Simulador no depende de ninguna
+ * implementación en particular, así puede ejecutarse sin pantalla.
+ */
+public interface ObservadorDeSimulacion
+{
+    /**
+     * Muestra el estado actual del campo.
+     * @param paso En qué paso de iteración se encuentra.
+     * @param campo El campo cuyo estado debe mostrarse.
+     */
+    void mostrarEstado(int paso, Campo campo);
+}
@@ -0,0 +1,134 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * La lista de los animales de una simulación, guardada en un arreglo.
+ * Los muertos no se quitan uno por uno, lo que costaría mover el resto
+ * de la lista cada vez: al terminar el paso, compactar los quita a
+ * todos en una sola pasada, conservando el orden de los vivos. Los
+ * recién nacidos se agregan al final, en un espacio reservado antes de
+ * empezar el paso.
+ */
+public class Poblacion extends AbstractList<Animal> implements RandomAccess
+{
+    // Capacidad inicial del arreglo.
+    private static final int CAPACIDAD_INICIAL = 16;
+
+    private Animal[] animales;
+    private int cantidad;
+    // Adonde van los muertos al compactar, o null.
+    private ReservaDeAnimales reserva;
+
+    /**
+     * Crea una población vacía.
+     */
+    public Poblacion()
+    {
+        animales = new Animal[CAPACIDAD_INICIAL];
+    }
+
+    public Animal get(int indice)
+    {
+        verificarIndice(indice);
+        return animales[indice];
+    }
+
+    public Animal set(int indice, Animal animal)
+    {
+        verificarIndice(indice);
+        Animal anterior = animales[indice];
+        animales[indice] = animal;
+        return anterior;
+    }
+
+    public int size()
+    {
+        return cantidad;
+    }
+
+    /**
+     * Agrega un animal al final.
+     * @param animal El animal a agregar.
+     * @return true.
+     */
+    public boolean add(Animal animal)
+    {
+        if(cantidad == animales.length) {
+            reservar(1);
+        }
+        animales[cantidad++] = animal;
+        return true;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(animales, 0, cantidad, null);
+        cantidad = 0;
+    }
+
+    /**
+     * Se asegura de que se puedan agregar la cantidad de animales dada
+     * sin agrandar el arreglo.
+     * @param adicionales Cuántos animales se espera agregar.
+     */
+    public void reservar(int adicionales)
+    {
+        int necesaria = cantidad + adicionales;
+        if(necesaria > animales.length) {
+            animales = Arrays.copyOf(animales, Math.max(necesaria, animales.length * 2));
+        }
+    }
+
+    /**
+     * Establece la reserva que recibe a los animales muertos al compactar.
+     * @param reserva La reserva, o null para descartarlos.
+     */
+    public void setReserva(ReservaDeAnimales reserva)
+    {
+        this.reserva = reserva;
+    }
+
+    /**
+     * Quita a los animales muertos en una sola pasada y los entrega a la
+     * reserva, si hay una. Los vivos quedan en el mismo orden relativo.
+     * @return La cantidad de animales quitados.
+     */
+    public int compactar()
+    {
+        int vivos = 0;
+        for(int i = 0; i < cantidad; i++) {
+            Animal animal = animales[i];
+            if(animal.estaVivo()) {
+                animales[vivos++] = animal;
+            }
+            else if(reserva != null) {
+                reserva.devolver(animal);
+            }
+        }
+        int quitados = cantidad - vivos;
+        Arrays.fill(animales, vivos, cantidad, null);
+        cantidad = vivos;
+        return quitados;
+    }
+
+    /**
+     * Quita un tramo de la lista moviendo el resto una sola vez; lo usa
+     * subList(desde, hasta).clear().
+     */
+    protected void removeRange(int desde, int hasta)
+    {
+        System.arraycopy(animales, hasta, animales, desde, cantidad - hasta);
+        int nuevaCantidad = cantidad - (hasta - desde);
+        Arrays.fill(animales, nuevaCantidad, cantidad, null);
+        cantidad = nuevaCantidad;
+        modCount++;
+    }
+
+    private void verificarIndice(int indice)
+    {
+        if(indice < 0 || indice >= cantidad) {
+            throw new IndexOutOfBoundsException("Índice " + indice + ", tamaño " + cantidad);
+        }
+    }
+}
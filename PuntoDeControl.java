@@ -0,0 +1,350 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Guarda y lee el estado completo de una simulación en un archivo
+ * binario. Como los flujos aleatorios de cada paso se derivan de la
+ * semilla y el número de paso (ver Azar), alcanza con guardar ambos
+ * para que la simulación restaurada siga exactamente como la original.
+ * Formato, en little-endian: una cabecera con mágico, versión, paso,
+ * largo, ancho, semilla y cantidad de animales, y un registro de ancho
+ * fijo por animal en el orden de la lista de la simulación. Un animal
+ * muerto durante el paso (un conejo comido después de actuar) sigue
+ * ocupando su posición hasta el paso siguiente aunque ya no esté en la
+ * lista; esos animales se guardan después de los de la lista, y cada
+ * registro indica si el animal está vivo, si ocupa su posición en el
+ * campo y si está en la lista. Siguen la cantidad de posiciones con
+ * hierba, un registro por cada una y, al final, la cantidad de cada
+ * especie en el campo, para verificar el estado al leerlo. La versión 2
+ * no guardaba a los muertos que quedaban fuera de la lista ni las
+ * cantidades; la versión 1, sin capa de hierba, guardaba además la
+ * hierba como animales y, al leerla, esos registros se informan como
+ * hierba madura. Los registros se escriben y leen en bloques grandes con
+ * un FileChannel, sin crear objetos intermedios.
+ */
+public final class PuntoDeControl
+{
+    // Identifica a los archivos de punto de control.
+    private static final int MAGICO = 0x5A795043;
+    private static final int VERSION = 3;
+    // Las versiones anteriores, que todavía se pueden leer.
+    private static final int VERSION_SIN_MUERTOS_FUERA_DE_LA_LISTA = 2;
+    private static final int VERSION_SIN_CAPA_DE_HIERBA = 1;
+    // Cabecera: mágico, versión, paso, largo, ancho (int),
+    // semilla (long), cantidad de animales (int).
+    private static final int CABECERA = 32;
+    // Registro de cada animal: especie (byte), estado (byte),
+    // nivel de comida (short), edad, fila, columna (int).
+    private static final int TAMANIO_DE_REGISTRO = 16;
+    // Registro de cada posición con hierba: fila, columna (int), nivel (byte).
+    private static final int TAMANIO_DE_REGISTRO_DE_HIERBA = 9;
+    // Bits del estado de cada registro.
+    private static final int VIVO = 1;
+    private static final int EN_EL_CAMPO = 2;
+    private static final int FUERA_DE_LA_LISTA = 4;
+    // Tamaño del bloque que se escribe o lee de una vez.
+    private static final int TAMANIO_DEL_BLOQUE = 1 << 20;
+
+    /**
+     * Recibe la cabecera, los animales y la hierba de un punto de control.
+     */
+    public interface LectorDeEstado
+    {
+        /**
+         * Se llama una vez, antes que leerAnimal.
+         * @param paso El paso en que se guardó el estado.
+         * @param largo El largo del campo.
+         * @param ancho El ancho del campo.
+         * @param semilla La semilla de la simulación.
+         */
+        void leerCabecera(int paso, int largo, int ancho, long semilla);
+
+        /**
+         * Se llama para cada animal, en el orden en que se guardaron.
+         * @param especie El código de especie.
+         * @param fila La fila que ocupa.
+         * @param columna La columna que ocupa.
+         * @param edad Su edad.
+         * @param nivelDeComida Su nivel de comida, si es un zorro.
+         * @param vivo Si el animal está vivo.
+         * @param enElCampo Si el animal ocupa su posición en el campo.
+         * @param enLaLista Si el animal está en la lista de la simulación;
+         *                  si no, es un muerto que sólo ocupa su posición.
+         */
+        void leerAnimal(int especie, int fila, int columna, int edad, int nivelDeComida,
+                        boolean vivo, boolean enElCampo, boolean enLaLista);
+
+        /**
+         * Se llama para cada posición con hierba, después de los animales.
+         * @param fila La fila de la posición.
+         * @param columna La columna de la posición.
+         * @param nivel El nivel de la hierba.
+         */
+        void leerHierba(int fila, int columna, int nivel);
+
+        /**
+         * Se llama al final, si el archivo las guarda.
+         * @param cantidades La cantidad de cada especie en el campo al
+         *                   guardarlo, indexada por código de especie.
+         */
+        void leerCantidades(int[] cantidades);
+    }
+
+    private PuntoDeControl()
+    {
+    }
+
+    /**
+     * Guarda un estado. Se escribe primero en un archivo temporal que
+     * luego reemplaza al destino, así una falla a mitad de la escritura
+     * no arruina el punto de control anterior.
+     * @param archivo El archivo destino.
+     * @param paso El paso actual.
+     * @param semilla La semilla de la simulación.
+     * @param campo El campo actual.
+     * @param animales Los animales, en el orden de la simulación.
+     */
+    public static void guardar(Path archivo, int paso, long semilla, Campo campo, List<Animal> animales)
+    {
+        // Los muertos que ocupan su posición sin estar en la lista. Entre
+        // pasos la lista ya no tiene muertos; si los tuviera, se guardan
+        // sólo con la lista.
+        Set<Animal> muertosEnLaLista = Collections.newSetFromMap(new IdentityHashMap<Animal, Boolean>());
+        for(Animal animal : animales) {
+            if(!animal.estaVivo()) {
+                muertosEnLaLista.add(animal);
+            }
+        }
+        final int[] fueraDeLaLista = new int[1];
+        campo.recorrerOcupadas(new VisitanteDeCeldas() {
+            public void visitar(int fila, int columna, Animal animal)
+            {
+                if(!animal.estaVivo() && !muertosEnLaLista.contains(animal)) {
+                    fueraDeLaLista[0]++;
+                }
+            }
+        });
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try(FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                                                 StandardOpenOption.WRITE,
+                                                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bloque = ByteBuffer.allocateDirect(TAMANIO_DEL_BLOQUE).order(ByteOrder.LITTLE_ENDIAN);
+            bloque.putInt(MAGICO);
+            bloque.putInt(VERSION);
+            bloque.putInt(paso);
+            bloque.putInt(campo.getLargo());
+            bloque.putInt(campo.getAncho());
+            bloque.putLong(semilla);
+            bloque.putInt(animales.size() + fueraDeLaLista[0]);
+            for(Animal animal : animales) {
+                if(bloque.remaining() < TAMANIO_DE_REGISTRO) {
+                    escribir(canal, bloque);
+                }
+                Ubicacion ubicacion = animal.getUbicacion();
+                int estado = animal.estaVivo() ? VIVO : 0;
+                if(campo.getAnimalEn(ubicacion.getFila(), ubicacion.getColumna()) == animal) {
+                    estado |= EN_EL_CAMPO;
+                }
+                ponerAnimal(bloque, animal, estado);
+            }
+            if(fueraDeLaLista[0] > 0) {
+                final FileChannel destino = canal;
+                final ByteBuffer salida = bloque;
+                campo.recorrerOcupadas(new VisitanteDeCeldas() {
+                    public void visitar(int fila, int columna, Animal animal)
+                    {
+                        if(!animal.estaVivo() && !muertosEnLaLista.contains(animal)) {
+                            if(salida.remaining() < TAMANIO_DE_REGISTRO) {
+                                escribirSinExcepcion(destino, salida);
+                            }
+                            ponerAnimal(salida, animal, EN_EL_CAMPO | FUERA_DE_LA_LISTA);
+                        }
+                    }
+                });
+            }
+            Hierba hierba = campo.getHierba();
+            if(bloque.remaining() < 4) {
+                escribir(canal, bloque);
+            }
+            bloque.putInt(hierba != null ? hierba.getCantidad() : 0);
+            if(hierba != null) {
+                final FileChannel destino = canal;
+                final ByteBuffer salida = bloque;
+                hierba.recorrer(new Hierba.VisitanteDeHierba() {
+                    public void visitar(int fila, int columna, int nivel)
+                    {
+                        if(salida.remaining() < TAMANIO_DE_REGISTRO_DE_HIERBA) {
+                            escribirSinExcepcion(destino, salida);
+                        }
+                        salida.putInt(fila);
+                        salida.putInt(columna);
+                        salida.put((byte) nivel);
+                    }
+                });
+            }
+            if(bloque.remaining() < 4 * (Especie.CANTIDAD - 1)) {
+                escribir(canal, bloque);
+            }
+            for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+                bloque.putInt(campo.getCantidad(especie));
+            }
+            escribir(canal, bloque);
+            canal.force(false);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo guardar el estado en " + archivo, e);
+        }
+        catch(UncheckedIOException e) {
+            throw new UncheckedIOException("No se pudo guardar el estado en " + archivo, e.getCause());
+        }
+        try {
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo reemplazar " + archivo, e);
+        }
+    }
+
+    /**
+     * Agrega al bloque el registro de un animal.
+     */
+    private static void ponerAnimal(ByteBuffer bloque, Animal animal, int estado)
+    {
+        int nivelDeComida = 0;
+        if(animal instanceof Zorro) {
+            nivelDeComida = ((Zorro) animal).getNivelDeComida();
+        }
+        Ubicacion ubicacion = animal.getUbicacion();
+        bloque.put((byte) animal.getEspecie());
+        bloque.put((byte) estado);
+        bloque.putShort((short) nivelDeComida);
+        bloque.putInt(animal.getEdad());
+        bloque.putInt(ubicacion.getFila());
+        bloque.putInt(ubicacion.getColumna());
+    }
+
+    /**
+     * Lee un estado guardado con guardar.
+     * @param archivo El archivo a leer.
+     * @param lector Recibe la cabecera y cada animal.
+     */
+    public static void leer(Path archivo, LectorDeEstado lector)
+    {
+        try(FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            ByteBuffer bloque = ByteBuffer.allocateDirect(TAMANIO_DEL_BLOQUE).order(ByteOrder.LITTLE_ENDIAN);
+            // Todavía no hay nada sin leer.
+            bloque.limit(0);
+            completar(canal, bloque, CABECERA);
+            int magico = bloque.getInt();
+            int version = bloque.getInt();
+            if(magico != MAGICO || version < VERSION_SIN_CAPA_DE_HIERBA || version > VERSION) {
+                throw new IllegalArgumentException(archivo + " no es un punto de control.");
+            }
+            int paso = bloque.getInt();
+            int largo = bloque.getInt();
+            int ancho = bloque.getInt();
+            long semilla = bloque.getLong();
+            int cantidad = bloque.getInt();
+            lector.leerCabecera(paso, largo, ancho, semilla);
+            for(int i = 0; i < cantidad; i++) {
+                if(bloque.remaining() < TAMANIO_DE_REGISTRO) {
+                    completar(canal, bloque, TAMANIO_DE_REGISTRO);
+                }
+                int especie = bloque.get();
+                int estado = bloque.get();
+                int nivelDeComida = bloque.getShort();
+                int edad = bloque.getInt();
+                int fila = bloque.getInt();
+                int columna = bloque.getInt();
+                if(especie == Especie.HIERBA) {
+                    lector.leerHierba(fila, columna, Hierba.NIVEL_DE_MADUREZ);
+                }
+                else {
+                    lector.leerAnimal(especie, fila, columna, edad, nivelDeComida,
+                                      (estado & VIVO) != 0, (estado & EN_EL_CAMPO) != 0,
+                                      (estado & FUERA_DE_LA_LISTA) == 0);
+                }
+            }
+            if(version >= VERSION_SIN_MUERTOS_FUERA_DE_LA_LISTA) {
+                if(bloque.remaining() < 4) {
+                    completar(canal, bloque, 4);
+                }
+                int cantidadDeHierba = bloque.getInt();
+                for(int i = 0; i < cantidadDeHierba; i++) {
+                    if(bloque.remaining() < TAMANIO_DE_REGISTRO_DE_HIERBA) {
+                        completar(canal, bloque, TAMANIO_DE_REGISTRO_DE_HIERBA);
+                    }
+                    int fila = bloque.getInt();
+                    int columna = bloque.getInt();
+                    lector.leerHierba(fila, columna, bloque.get());
+                }
+            }
+            if(version == VERSION) {
+                if(bloque.remaining() < 4 * (Especie.CANTIDAD - 1)) {
+                    completar(canal, bloque, 4 * (Especie.CANTIDAD - 1));
+                }
+                int[] cantidades = new int[Especie.CANTIDAD];
+                for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+                    cantidades[especie] = bloque.getInt();
+                }
+                lector.leerCantidades(cantidades);
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("No se pudo leer el estado de " + archivo, e);
+        }
+    }
+
+    /**
+     * Escribe el contenido del bloque y lo deja vacío para seguir
+     * llenándolo.
+     */
+    private static void escribir(FileChannel canal, ByteBuffer bloque) throws IOException
+    {
+        bloque.flip();
+        while(bloque.hasRemaining()) {
+            canal.write(bloque);
+        }
+        bloque.clear();
+    }
+
+    /**
+     * Igual que escribir, para usar desde un visitante.
+     */
+    private static void escribirSinExcepcion(FileChannel canal, ByteBuffer bloque)
+    {
+        try {
+            escribir(canal, bloque);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Lee del canal hasta que el bloque tenga al menos la cantidad de
+     * bytes pedida sin leer, conservando los que ya tenía.
+     */
+    private static void completar(FileChannel canal, ByteBuffer bloque, int necesarios) throws IOException
+    {
+        bloque.compact();
+        while(bloque.position() < necesarios) {
+            if(canal.read(bloque) < 0) {
+                throw new EOFException("Punto de control incompleto.");
+            }
+        }
+        bloque.flip();
+    }
+}
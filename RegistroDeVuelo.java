@@ -0,0 +1,157 @@
+/**
+ * Emite los eventos del simulador para el registro de vuelo de la
+ * máquina virtual (JFR), así un paso lento se puede comparar con la
+ * recolección de basura y las asignaciones del mismo momento: por
+ * ejemplo con java -XX:StartFlightRecording=filename=sim.jfr. Funciona
+ * igual sin pantalla.
+ * Para no pesar sobre la simulación, sólo se registra un paso de cada
+ * pasosPorMuestra, además de cada paso que dure más de FACTOR_DE_LENTITUD
+ * veces el promedio reciente; los cambios bruscos de población se
+ * registran a lo sumo una vez por ventana y especie. Si JFR no está
+ * grabando, los eventos no hacen nada.
+ */
+public class RegistroDeVuelo
+{
+    // Cuántas veces más que el promedio debe durar un paso para
+    // registrarlo aunque no toque por muestreo.
+    public static final int FACTOR_DE_LENTITUD = 10;
+    // El peso del último paso en el promedio de duración.
+    private static final double PESO_DEL_PROMEDIO = 1.0 / 64;
+
+    private final ContadorDeEventos eventos;
+    private final int pasosPorMuestra;
+    private final double umbral;
+    private final int ventana;
+    // El evento del paso en curso.
+    private EventoDePaso evento;
+    private long inicioDelPaso;
+    // El promedio de la duración de los pasos, en nanosegundos.
+    private double duracionMedia;
+    // Nacimientos y muertes al empezar el paso.
+    private long nacimientosAlIniciar, muertesAlIniciar;
+    // Hasta qué paso no se vuelve a registrar un cambio de cada especie.
+    private final int[] silencioHasta;
+
+    /**
+     * @param eventos Donde el campo cuenta los nacimientos y muertes.
+     * @param pasosPorMuestra Cada cuántos pasos se registra uno.
+     * @param umbral El cambio relativo de una población, por ej. 0.5,
+     *               desde el que se registra un derrumbe o una explosión.
+     * @param ventana En cuántos pasos se mide el cambio; a lo sumo
+     *                HistorialDePoblacion.CAPACIDAD.
+     */
+    public RegistroDeVuelo(ContadorDeEventos eventos, int pasosPorMuestra, double umbral, int ventana)
+    {
+        if(pasosPorMuestra <= 0 || umbral <= 0 || ventana <= 0 || ventana >= HistorialDePoblacion.CAPACIDAD) {
+            throw new IllegalArgumentException("Parámetros de registro inválidos: " + pasosPorMuestra + ", "
+                                               + umbral + ", " + ventana);
+        }
+        this.eventos = eventos;
+        this.pasosPorMuestra = pasosPorMuestra;
+        this.umbral = umbral;
+        this.ventana = ventana;
+        silencioHasta = new int[Especie.CANTIDAD];
+    }
+
+    /**
+     * Marca el comienzo de un paso.
+     */
+    public void iniciarPaso()
+    {
+        evento = new EventoDePaso();
+        if(evento.isEnabled()) {
+            nacimientosAlIniciar = eventos.getNacimientos();
+            muertesAlIniciar = eventos.getMuertes();
+            inicioDelPaso = System.nanoTime();
+            evento.begin();
+        }
+    }
+
+    /**
+     * Marca el fin de un paso y registra sus eventos, si corresponde.
+     * @param paso El paso que terminó.
+     * @param campo El campo actual.
+     * @param historial El historial de población, con este paso.
+     */
+    public void terminarPaso(int paso, Campo campo, HistorialDePoblacion historial)
+    {
+        if(evento.isEnabled()) {
+            registrarPaso(paso, campo);
+        }
+        registrarCambios(paso, historial);
+    }
+
+    private void registrarPaso(int paso, Campo campo)
+    {
+        evento.end();
+        long duracion = System.nanoTime() - inicioDelPaso;
+        boolean lento = duracionMedia > 0 && duracion > FACTOR_DE_LENTITUD * duracionMedia;
+        duracionMedia = duracionMedia == 0 ? duracion
+                                           : duracionMedia + (duracion - duracionMedia) * PESO_DEL_PROMEDIO;
+        if((lento || paso % pasosPorMuestra == 0) && evento.shouldCommit()) {
+            evento.paso = paso;
+            evento.conejos = campo.getCantidad(Especie.CONEJO);
+            evento.zorros = campo.getCantidad(Especie.ZORRO);
+            evento.hierba = campo.getCantidad(Especie.HIERBA);
+            evento.nacimientos = eventos.getNacimientos() - nacimientosAlIniciar;
+            evento.muertes = eventos.getMuertes() - muertesAlIniciar;
+            evento.lento = lento;
+            evento.commit();
+        }
+    }
+
+    /**
+     * Compara la población de cada especie con la de hace una ventana.
+     */
+    private void registrarCambios(int paso, HistorialDePoblacion historial)
+    {
+        int ultimo = historial.getTamanio(0) - 1;
+        if(ultimo < ventana) {
+            return;
+        }
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            if(paso < silencioHasta[especie]) {
+                continue;
+            }
+            int anterior = historial.getMinimo(0, ultimo - ventana, especie);
+            int cantidad = historial.getMinimo(0, ultimo, especie);
+            if(Math.abs(cantidad - anterior) >= umbral * Math.max(anterior, 1)) {
+                EventoDeCambioDePoblacion cambio = new EventoDeCambioDePoblacion();
+                if(!cambio.isEnabled()) {
+                    return;
+                }
+                cambio.paso = paso;
+                cambio.especie = Especie.getNombre(especie);
+                cambio.anterior = anterior;
+                cambio.cantidad = cantidad;
+                cambio.pasos = ventana;
+                cambio.explosion = cantidad > anterior;
+                cambio.commit();
+                silencioHasta[especie] = paso + ventana;
+            }
+        }
+    }
+
+    /**
+     * Empieza a medir una llamada a mostrarEstado.
+     * @return El evento, que se pasa a terminarVista.
+     */
+    public EventoDeVista iniciarVista()
+    {
+        EventoDeVista vista = new EventoDeVista();
+        vista.begin();
+        return vista;
+    }
+
+    /**
+     * Registra una llamada a mostrarEstado.
+     */
+    public void terminarVista(EventoDeVista vista, int paso, ObservadorDeSimulacion observador)
+    {
+        if(vista.shouldCommit()) {
+            vista.paso = paso;
+            vista.observador = observador.getClass();
+            vista.commit();
+        }
+    }
+}
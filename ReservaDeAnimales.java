@@ -0,0 +1,213 @@
+import java.util.Arrays;
+
+/**
+ * Guarda los conejos y zorros muertos para volver a usarlos en los
+ * nacimientos siguientes, en lugar de crear objetos nuevos en cada
+ * paso.
+ * Un animal muerto puede seguir en los campos como ocupante fantasma:
+ * un conejo comido después de actuar queda en el campo actualizado,
+ * que pasa a ser el campo actual del paso siguiente y recién se limpia
+ * al terminar ese paso. Por eso los muertos de un paso esperan un paso
+ * completo en cuarentena antes de quedar disponibles; para entonces
+ * ninguno de los dos campos los referencia.
+ * Obtener animales es seguro desde varios hilos.
+ */
+public class ReservaDeAnimales
+{
+    // Capacidad inicial de cada pila.
+    private static final int CAPACIDAD_INICIAL = 64;
+
+    // Por especie: los animales disponibles, los muertos del paso actual
+    // y los del paso anterior.
+    private final Pila[] disponibles;
+    private final Pila[] muertosDelPaso;
+    private final Pila[] enCuarentena;
+    // Por especie: animales pedidos y cuántos se sacaron de la reserva.
+    private final long[] pedidos;
+    private final long[] aciertos;
+
+    /**
+     * Crea una reserva vacía.
+     */
+    public ReservaDeAnimales()
+    {
+        disponibles = new Pila[Especie.CANTIDAD];
+        muertosDelPaso = new Pila[Especie.CANTIDAD];
+        enCuarentena = new Pila[Especie.CANTIDAD];
+        for(int especie = 0; especie < Especie.CANTIDAD; especie++) {
+            disponibles[especie] = new Pila();
+            muertosDelPaso[especie] = new Pila();
+            enCuarentena[especie] = new Pila();
+        }
+        pedidos = new long[Especie.CANTIDAD];
+        aciertos = new long[Especie.CANTIDAD];
+    }
+
+    /**
+     * @return Un conejo recién nacido, reciclado si hay alguno disponible.
+     */
+    public Conejo obtenerConejo()
+    {
+        Animal animal = obtener(Especie.CONEJO);
+        return animal != null ? (Conejo) animal : new Conejo(false);
+    }
+
+    /**
+     * @return Un zorro recién nacido, reciclado si hay alguno disponible.
+     */
+    public Zorro obtenerZorro()
+    {
+        Animal animal = obtener(Especie.ZORRO);
+        return animal != null ? (Zorro) animal : new Zorro(false);
+    }
+
+    /**
+     * Recibe un animal muerto durante el paso actual. Sólo se llama
+     * entre pasos, desde el hilo de la simulación.
+     * @param animal El animal muerto.
+     */
+    public void devolver(Animal animal)
+    {
+        int especie = animal.getEspecie();
+        if(especie == Especie.CONEJO || especie == Especie.ZORRO) {
+            muertosDelPaso[especie].poner(animal);
+        }
+    }
+
+    /**
+     * Avanza la cuarentena al terminar un paso, después de limpiar el
+     * campo que deja de usarse: los muertos del paso anterior quedan
+     * disponibles y los de este paso pasan a la cuarentena.
+     */
+    public void cerrarPaso()
+    {
+        for(int especie = 0; especie < Especie.CANTIDAD; especie++) {
+            synchronized(disponibles[especie]) {
+                disponibles[especie].ponerTodos(enCuarentena[especie]);
+            }
+            Pila vacia = enCuarentena[especie];
+            enCuarentena[especie] = muertosDelPaso[especie];
+            muertosDelPaso[especie] = vacia;
+        }
+    }
+
+    /**
+     * Olvida a todos los animales guardados, por ej. al reiniciar la
+     * simulación.
+     */
+    public void vaciar()
+    {
+        for(int especie = 0; especie < Especie.CANTIDAD; especie++) {
+            synchronized(disponibles[especie]) {
+                disponibles[especie].vaciar();
+            }
+            muertosDelPaso[especie].vaciar();
+            enCuarentena[especie].vaciar();
+        }
+    }
+
+    /**
+     * @param especie Un código de especie.
+     * @return La fracción de los nacimientos de esa especie que usaron un
+     *         animal reciclado.
+     */
+    public double getTasaDeAciertos(int especie)
+    {
+        synchronized(disponibles[especie]) {
+            return pedidos[especie] == 0 ? 0 : (double) aciertos[especie] / pedidos[especie];
+        }
+    }
+
+    /**
+     * @param especie Un código de especie.
+     * @return Cuántos animales de esa especie están guardados, disponibles
+     *         o en cuarentena.
+     */
+    public int getCantidad(int especie)
+    {
+        synchronized(disponibles[especie]) {
+            return disponibles[especie].cantidad + enCuarentena[especie].cantidad
+                   + muertosDelPaso[especie].cantidad;
+        }
+    }
+
+    /**
+     * @return Un texto con la tasa de aciertos y el tamaño de cada reserva.
+     */
+    public String getDetalles()
+    {
+        StringBuilder detalles = new StringBuilder();
+        for(int especie : new int[] { Especie.CONEJO, Especie.ZORRO }) {
+            detalles.append(Especie.getNombre(especie));
+            detalles.append(String.format(": %.1f%% reciclados, %d guardados ",
+                                          100 * getTasaDeAciertos(especie), getCantidad(especie)));
+        }
+        return detalles.toString();
+    }
+
+    /**
+     * Saca un animal disponible y lo prepara para nacer.
+     * @return El animal, o null si no hay ninguno.
+     */
+    private Animal obtener(int especie)
+    {
+        Animal animal;
+        Pila pila = disponibles[especie];
+        synchronized(pila) {
+            pedidos[especie]++;
+            animal = pila.sacar();
+            if(animal == null) {
+                return null;
+            }
+            aciertos[especie]++;
+        }
+        animal.renacer();
+        return animal;
+    }
+
+    /**
+     * Una pila de animales en un arreglo.
+     */
+    private static class Pila
+    {
+        private Animal[] animales = new Animal[CAPACIDAD_INICIAL];
+        private int cantidad;
+
+        private void poner(Animal animal)
+        {
+            if(cantidad == animales.length) {
+                animales = Arrays.copyOf(animales, cantidad * 2);
+            }
+            animales[cantidad++] = animal;
+        }
+
+        private Animal sacar()
+        {
+            if(cantidad == 0) {
+                return null;
+            }
+            Animal animal = animales[--cantidad];
+            animales[cantidad] = null;
+            return animal;
+        }
+
+        /**
+         * Pasa a esta pila todos los animales de otra, dejándola vacía.
+         */
+        private void ponerTodos(Pila otra)
+        {
+            if(cantidad + otra.cantidad > animales.length) {
+                animales = Arrays.copyOf(animales, Math.max(cantidad + otra.cantidad, animales.length * 2));
+            }
+            System.arraycopy(otra.animales, 0, animales, cantidad, otra.cantidad);
+            cantidad += otra.cantidad;
+            otra.vaciar();
+        }
+
+        private void vaciar()
+        {
+            Arrays.fill(animales, 0, cantidad, null);
+            cantidad = 0;
+        }
+    }
+}
@@ -1,9 +1,8 @@
-import java.util.Random;
+import java.util.random.RandomGenerator;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.Collections;
-import java.awt.Color;
+import java.nio.file.Path;
 
 /**
  * Un modelo sencillo de simulación predador-presa con zorros y conejos
@@ -25,13 +24,15 @@ public class Simulador
     private static final double PROBABILIDAD_DE_CREACION_DEL_ZORRO = 0.015;
     // La probabilidad que se cree un conejo en cualquier posición de la malla.
     private static final double PROBABILIDAD_DE_CREACION_DEL_CONEJO = 0.065;
+    // La probabilidad que haya hierba en cualquier posición de la malla.
     private static final double PROBABILIDAD_DE_CREACION_DE_HIERBA = 0.02;
+    // El flujo aleatorio que se usa al poblar o restaurar el campo, fuera
+    // de los que usan los pasos.
+    private static final long FLUJO_DE_INICIO = -1;
 
 
     // La lista de los animales en el campo
-    private List<Animal> animales;
-    // La lista de los animales recién nacidos
-    private List<Animal> nuevosAnimales;
+    private Poblacion animales;
     // El estado actual del campo.
     private Campo campo;
     // Un segundo campo que se usa para construir el siguiente escenario
@@ -39,8 +40,41 @@ public class Simulador
     private Campo campoActualizado;
     // El paso actual de la simulación.
     private int paso;
-    // Una vista gráfica de la simulación.
-    private VisorDelSimulador visor;
+    // La semilla de la que se derivan los flujos aleatorios de cada paso.
+    private long semilla;
+    // Quienes reciben el estado del campo, por ej. una vista gráfica.
+    private List<ObservadorDeSimulacion> observadores;
+    // Estadísticas propias, para decidir si la simulación es viable
+    // aunque no haya observadores.
+    private EstadisticasDelCampo estadisticas;
+    // Cantidad mínima de pasos y de milisegundos entre dos
+    // notificaciones a los observadores.
+    private int pasosEntreVistas;
+    private long milisegundosEntreVistas;
+    // Paso y momento (en nanosegundos) de la última notificación.
+    private int pasoDeLaUltimaVista;
+    private long momentoDeLaUltimaVista;
+    // El motor que ejecuta los pasos en paralelo, o null para
+    // ejecutarlos en este hilo.
+    private MotorDeSimulacion motor;
+    // El diario de nacimientos y muertes, o null.
+    private DiarioDeEventos diario;
+    // Adonde se exporta el historial de población, o null.
+    private ExportadorDeHistorial exportador;
+    // Las mediciones de cada paso, o null para no medir.
+    private MetricasDeSimulacion metricas;
+    // Los eventos para el registro de vuelo, o null.
+    private RegistroDeVuelo registroDeVuelo;
+    // Donde los campos cuentan nacimientos y muertes para las métricas y
+    // el registro de vuelo, o null si no se usa ninguno.
+    private ContadorDeEventos contadorDeEventos;
+    // La reserva de animales reciclados, o null.
+    private ReservaDeAnimales reserva;
+    // La hierba, común a ambos campos; se crea con la primera mata (ver
+    // crearHierba), así que es null mientras no se siembra.
+    private Hierba hierba;
+    // Si la hierba crece y se propaga entre pasos.
+    private boolean hierbaQueCrece;
 
     /**
      * Crea un campo de simulación del tamaño por defecto.
@@ -56,6 +90,49 @@ public class Simulador
      * @param ancho El ancho del campo. Debe ser mayor que cero.
      */
     public Simulador(int largo, int ancho)
+    {
+        this(largo, ancho, TipoDeCampo.DENSO);
+    }
+
+    /**
+     * Crea un campo de simulación de un determinado tamaño que almacena
+     * su contenido de la forma indicada.
+     * @param largo El largo del campo. Debe ser mayor que cero.
+     * @param ancho El ancho del campo. Debe ser mayor que cero.
+     * @param tipo La forma de almacenar el campo, por ej. POR_BLOQUES
+     *             para campos enormes y mayormente vacíos.
+     */
+    public Simulador(int largo, int ancho, TipoDeCampo tipo)
+    {
+        this(largo, ancho, tipo, true);
+    }
+
+    /**
+     * Crea un campo de simulación de un determinado tamaño que almacena
+     * su contenido de la forma indicada, con o sin visor gráfico.
+     * @param largo El largo del campo. Debe ser mayor que cero.
+     * @param ancho El ancho del campo. Debe ser mayor que cero.
+     * @param tipo La forma de almacenar el campo.
+     * @param conVisor Si es false la simulación no usa ninguna clase de
+     *                 AWT ni de Swing y puede ejecutarse sin pantalla.
+     */
+    public Simulador(int largo, int ancho, TipoDeCampo tipo, boolean conVisor)
+    {
+        this(largo, ancho, tipo, conVisor, Azar.semillaNueva());
+    }
+
+    /**
+     * Crea un campo de simulación reproducible: con la misma semilla,
+     * el mismo tamaño y el mismo motor se obtiene la misma secuencia de
+     * estados.
+     * @param largo El largo del campo. Debe ser mayor que cero.
+     * @param ancho El ancho del campo. Debe ser mayor que cero.
+     * @param tipo La forma de almacenar el campo.
+     * @param conVisor Si se muestra la simulación en un visor gráfico.
+     * @param semilla La semilla de la que se derivan todos los números
+     *                aleatorios de la simulación.
+     */
+    public Simulador(int largo, int ancho, TipoDeCampo tipo, boolean conVisor, long semilla)
     {
         if(ancho <= 0 || largo <= 0) {
             System.out.println("Las dimensiones deben ser mayores que cero.");
@@ -63,19 +140,139 @@ public class Simulador
             largo = LARGO_POR_DEFECTO;
             ancho = ANCHO_POR_DEFECTO;
         }
-        animales = new ArrayList<Animal>();
-        nuevosAnimales = new ArrayList<Animal>();
-        campo = new Campo(largo, ancho);
-        campoActualizado = new Campo(largo, ancho);
-
-        // Crea un visor del estado de cada ubicacin en el campo.
-        visor = new VisorDelSimulador(largo, ancho);
-        visor.setColor(Conejo.class, Color.orange);
-        visor.setColor(Zorro.class, Color.blue);
-        visor.setColor(Hierba.class, Color.green);
+        preparar(largo, ancho, conVisor, semilla);
+        campo = tipo.crearCampo(largo, ancho);
+        campoActualizado = tipo.crearCampo(largo, ancho);
         // Establece un punto de inicio válido.
         inicializar();
     }
+
+    /**
+     * Crea un campo de simulación guardado fuera del heap, en dos
+     * archivos mapeados en memoria: imagen.0 e imagen.1, uno para cada
+     * campo. Al terminar cada paso el campo actual queda sellado como
+     * imagen de ese paso; si alguno de los archivos ya contiene una
+     * imagen sellada de las mismas dimensiones, la simulación continúa
+     * desde la más reciente en lugar de empezar en el paso cero.
+     * La imagen sólo guarda a los ocupantes de cada posición: al
+     * continuar, la hierba se vuelve a sembrar en las posiciones libres,
+     * los muertos que todavía ocupan su posición vuelven al campo pero no
+     * a la lista, y un animal vivo que no ocupa ninguna posición (tapado
+     * por una cría) no se guarda. PuntoDeControl guarda el estado exacto.
+     * @param largo El largo del campo. Debe ser mayor que cero.
+     * @param ancho El ancho del campo. Debe ser mayor que cero.
+     * @param imagen La ruta base de los archivos del campo.
+     */
+    public Simulador(int largo, int ancho, Path imagen)
+    {
+        this(largo, ancho, imagen, true);
+    }
+
+    /**
+     * Igual que Simulador(largo, ancho, imagen), con o sin visor gráfico.
+     * @param largo El largo del campo. Debe ser mayor que cero.
+     * @param ancho El ancho del campo. Debe ser mayor que cero.
+     * @param imagen La ruta base de los archivos del campo.
+     * @param conVisor Si es false la simulación puede ejecutarse sin
+     *                 pantalla.
+     */
+    public Simulador(int largo, int ancho, Path imagen, boolean conVisor)
+    {
+        this(largo, ancho, imagen, conVisor, Azar.semillaNueva());
+    }
+
+    /**
+     * Igual que Simulador(largo, ancho, imagen, conVisor), con una
+     * semilla dada. Al continuar desde una imagen con la misma semilla,
+     * los pasos siguientes usan los mismos flujos aleatorios que en la
+     * ejecución original.
+     * @param largo El largo del campo. Debe ser mayor que cero.
+     * @param ancho El ancho del campo. Debe ser mayor que cero.
+     * @param imagen La ruta base de los archivos del campo.
+     * @param conVisor Si se muestra la simulación en un visor gráfico.
+     * @param semilla La semilla de la simulación.
+     */
+    public Simulador(int largo, int ancho, Path imagen, boolean conVisor, long semilla)
+    {
+        if(ancho <= 0 || largo <= 0) {
+            System.out.println("Las dimensiones deben ser mayores que cero.");
+            System.out.println("Uso de valores por defecto.");
+            largo = LARGO_POR_DEFECTO;
+            ancho = ANCHO_POR_DEFECTO;
+        }
+        preparar(largo, ancho, conVisor, semilla);
+
+        Path[] archivos = { imagen.resolveSibling(imagen.getFileName() + ".0"),
+                            imagen.resolveSibling(imagen.getFileName() + ".1") };
+        long pasoDeImagen0 = AlmacenMapeado.leerImagen(archivos[0], largo, ancho, null);
+        long pasoDeImagen1 = AlmacenMapeado.leerImagen(archivos[1], largo, ancho, null);
+        if(pasoDeImagen0 < 0 && pasoDeImagen1 < 0) {
+            campo = new Campo(largo, ancho, new AlmacenMapeado(archivos[0], largo, ancho));
+            campoActualizado = new Campo(largo, ancho, new AlmacenMapeado(archivos[1], largo, ancho));
+            inicializar();
+        }
+        else {
+            int origen = pasoDeImagen1 > pasoDeImagen0 ? 1 : 0;
+            // Se restaura sobre el otro archivo, así la imagen queda intacta
+            // hasta que su copia está sellada.
+            campo = new Campo(largo, ancho, new AlmacenMapeado(archivos[1 - origen], largo, ancho));
+            continuarDesde(archivos[origen]);
+            campoActualizado = new Campo(largo, ancho, new AlmacenMapeado(archivos[origen], largo, ancho));
+            campoActualizado.setHierba(hierba);
+        }
+    }
+
+    /**
+     * Crea las listas y estadísticas comunes a todos los constructores.
+     * @param semilla La semilla de la simulación.
+     * @param conVisor Si se agrega un visor del estado de cada
+     *                 ubicación en el campo.
+     */
+    private void preparar(int largo, int ancho, boolean conVisor, long semilla)
+    {
+        this.semilla = semilla;
+        animales = new Poblacion();
+        observadores = new ArrayList<ObservadorDeSimulacion>();
+        estadisticas = new EstadisticasDelCampo();
+        pasosEntreVistas = 1;
+        milisegundosEntreVistas = 0;
+        if(conVisor) {
+            observadores.add(new VisorDelSimulador(largo, ancho));
+        }
+    }
+
+    /**
+     * Agrega un observador que recibirá el estado del campo.
+     * @param observador El observador a agregar.
+     */
+    public void agregarObservador(ObservadorDeSimulacion observador)
+    {
+        observadores.add(observador);
+    }
+
+    /**
+     * Quita un observador.
+     * @param observador El observador a quitar.
+     */
+    public void quitarObservador(ObservadorDeSimulacion observador)
+    {
+        observadores.remove(observador);
+    }
+
+    /**
+     * Limita con qué frecuencia se notifica a los observadores: sólo se
+     * les envía el estado cuando pasaron al menos la cantidad de pasos
+     * y de milisegundos indicados desde la última vez. El estado inicial
+     * se envía siempre.
+     * @param pasos Pasos mínimos entre notificaciones; 1 para todos.
+     * @param milisegundos Milisegundos mínimos entre notificaciones; 0
+     *                     para no limitar por tiempo.
+     */
+    public void setIntervaloDeVisualizacion(int pasos, long milisegundos)
+    {
+        pasosEntreVistas = Math.max(1, pasos);
+        milisegundosEntreVistas = Math.max(0, milisegundos);
+    }
     
     /**
      * Ejecuta la simulación por un período razonablemente largo a partir
@@ -94,7 +291,7 @@ public class Simulador
      */
     public void simular(int numeroDePasos)
     {
-        for(int paso = 1; paso <= numeroDePasos && visor.esViable(campo); paso++) {
+        for(int paso = 1; paso <= numeroDePasos && estadisticas.esViable(campo); paso++) {
             simularUnPaso();
         }
     }
@@ -107,30 +304,418 @@ public class Simulador
     public void simularUnPaso()
     {
         paso++;
-        nuevosAnimales.clear();
+        if(metricas != null) {
+            metricas.iniciarPaso();
+        }
+        if(registroDeVuelo != null) {
+            registroDeVuelo.iniciarPaso();
+        }
         
-        // Deja actuar a todos loa animales
-        for(Iterator<Animal> it = animales.iterator(); it.hasNext(); ) {
-            Animal animal = it.next();
-            animal.act(campo, campoActualizado, nuevosAnimales);
+        if(motor != null) {
+            motor.simularPaso(paso, semilla, animales, campo, campoActualizado);
+            if(metricas != null) {
+                metricas.terminarFase(MetricasDeSimulacion.ACTUAR);
+            }
+        }
+        else {
+            Azar.usar(Azar.flujo(semilla, paso, 0));
+            // Deja actuar a todos los animales. Los recién nacidos se
+            // agregan al final de la misma lista y no actúan hasta el
+            // paso siguiente.
+            int cantidad = animales.size();
+            animales.reservar(cantidad);
+            for(int i = 0; i < cantidad; i++) {
+                animales.get(i).act(campo, campoActualizado, animales);
+            }
+            if(metricas != null) {
+                metricas.terminarFase(MetricasDeSimulacion.ACTUAR);
+            }
             // Remueve de la simulación a los animales muertos
-            if(! animal.estaVivo()) {
-                it.remove();
+            animales.compactar();
+            if(metricas != null) {
+                metricas.terminarFase(MetricasDeSimulacion.COMPACTAR);
             }
         }
-        // Agrega los animales recién nacidos a la lista.
-        animales.addAll(nuevosAnimales);
+        if(diario != null) {
+            diario.cerrarPaso(paso);
+        }
         
         // Intercambia el campo y el campoActualizado al final del paso.
         Campo temp = campo;
         campo = campoActualizado;
         campoActualizado = temp;
+        // Se sella el campo nuevo antes de limpiar el anterior, así
+        // siempre queda una imagen completa.
+        campo.sellar(paso);
         campoActualizado.limpiar();
+        if(reserva != null) {
+            reserva.cerrarPaso();
+        }
+        if(metricas != null) {
+            metricas.terminarFase(MetricasDeSimulacion.INTERCAMBIO);
+        }
+        if(hierbaQueCrece && hierba != null) {
+            hierba.crecer(campo, semilla, paso);
+            if(metricas != null) {
+                metricas.terminarFase(MetricasDeSimulacion.HIERBA);
+            }
+        }
+
+        // Las cuentas anteriores ya no valen para el campo nuevo.
+        estadisticas.inicializar();
+        estadisticas.registrarPaso(paso, campo);
+        if(metricas != null) {
+            metricas.terminarFase(MetricasDeSimulacion.ESTADISTICAS);
+        }
 
         // Visualiza el nuevo campo en la pantalla.
-        visor.mostrarEstado(paso, campo);
+        notificarObservadores(false);
+        if(metricas != null) {
+            metricas.terminarFase(MetricasDeSimulacion.VISTA);
+            metricas.terminarPaso(paso, campo);
+        }
+        if(registroDeVuelo != null) {
+            registroDeVuelo.terminarPaso(paso, campo, estadisticas.getHistorial());
+        }
+    }
+
+    /**
+     * Envía el estado actual a los observadores, si corresponde según el
+     * intervalo de visualización.
+     * @param siempre Si se notifica sin mirar el intervalo.
+     */
+    private void notificarObservadores(boolean siempre)
+    {
+        if(observadores.isEmpty()) {
+            return;
+        }
+        if(!siempre) {
+            if(paso - pasoDeLaUltimaVista < pasosEntreVistas) {
+                return;
+            }
+            if(milisegundosEntreVistas > 0
+                    && System.nanoTime() - momentoDeLaUltimaVista < milisegundosEntreVistas * 1000000) {
+                return;
+            }
+        }
+        pasoDeLaUltimaVista = paso;
+        if(milisegundosEntreVistas > 0) {
+            momentoDeLaUltimaVista = System.nanoTime();
+        }
+        for(ObservadorDeSimulacion observador : observadores) {
+            if(registroDeVuelo != null) {
+                EventoDeVista vista = registroDeVuelo.iniciarVista();
+                observador.mostrarEstado(paso, campo);
+                registroDeVuelo.terminarVista(vista, paso, observador);
+            }
+            else {
+                observador.mostrarEstado(paso, campo);
+            }
+        }
     }
         
+    /**
+     * Ejecuta los pasos siguientes en varios hilos, dividiendo el campo
+     * en franjas. Con la misma semilla y el mismo estado inicial, el
+     * resultado no depende de la cantidad de hilos. El almacenamiento
+     * del campo debe admitir escrituras concurrentes (DENSO o POR_BLOQUES).
+     * Los generadores de cada franja se derivan de la semilla de la
+     * simulación.
+     * @param hilos La cantidad de hilos a usar.
+     */
+    public void usarMotorParalelo(int hilos)
+    {
+        if(campo.getFilasPorGrupo() == 0) {
+            throw new IllegalStateException("El almacenamiento del campo no admite pasos en paralelo.");
+        }
+        usarMotorSecuencial();
+        motor = new MotorParalelo(hilos);
+    }
+
+    /**
+     * Ejecuta los pasos siguientes en varios hilos que se reparten la
+     * lista de animales sin dividir el campo; las posiciones se ocupan
+     * con operaciones atómicas. El resultado no es reproducible. El campo
+     * debe ser de tipo CONCURRENTE.
+     * @param hilos La cantidad de hilos a usar.
+     */
+    public void usarMotorConcurrente(int hilos)
+    {
+        if(!(campo instanceof CampoConcurrente)) {
+            throw new IllegalStateException("El motor concurrente necesita un campo de tipo CONCURRENTE.");
+        }
+        usarMotorSecuencial();
+        motor = new MotorConcurrente(hilos);
+    }
+
+    /**
+     * Ejecuta los pasos siguientes en el hilo que llama a simular, con
+     * el estado de los animales en columnas de tipos primitivos. El
+     * resultado es el mismo que el del recorrido secuencial.
+     */
+    public void usarMotorDeColumnas()
+    {
+        usarMotorDeColumnas(false);
+    }
+
+    /**
+     * Igual que usarMotorDeColumnas(), eligiendo cómo envejecer a los
+     * animales (ver MotorDeColumnas.setEnvejecimientoSinSaltos).
+     * @param envejecimientoSinSaltos Si se envejece sin saltos en lugar
+     *                                de animal por animal.
+     */
+    public void usarMotorDeColumnas(boolean envejecimientoSinSaltos)
+    {
+        usarMotorSecuencial();
+        MotorDeColumnas columnas = new MotorDeColumnas();
+        columnas.setEnvejecimientoSinSaltos(envejecimientoSinSaltos);
+        motor = columnas;
+    }
+
+    /**
+     * Ejecuta los pasos siguientes en el hilo que llama a simular.
+     */
+    public void usarMotorSecuencial()
+    {
+        if(motor != null) {
+            motor.cerrar();
+            motor = null;
+        }
+    }
+
+    /**
+     * Anota desde el próximo paso cada nacimiento y cada muerte, con su
+     * causa y su posición, al final del archivo dado. La escritura la
+     * hace otro hilo y no demora los pasos.
+     * @param archivo El archivo del diario de eventos.
+     */
+    public void registrarEventos(Path archivo)
+    {
+        dejarDeRegistrarEventos();
+        diario = new DiarioDeEventos(archivo);
+        campo.setDiario(diario);
+        campoActualizado.setDiario(diario);
+    }
+
+    /**
+     * Deja de anotar eventos y termina de escribir los ya anotados.
+     */
+    public void dejarDeRegistrarEventos()
+    {
+        if(diario != null) {
+            campo.setDiario(null);
+            campoActualizado.setDiario(null);
+            diario.cerrar();
+            diario = null;
+        }
+    }
+
+    /**
+     * Escribe desde el próximo paso la cantidad de cada especie en cada
+     * paso en el archivo dado. La escritura la hace otro hilo y no demora
+     * los pasos.
+     * @param archivo El archivo del historial, que se reemplaza.
+     * @param formato El formato del archivo.
+     */
+    public void exportarHistorial(Path archivo, ExportadorDeHistorial.Formato formato)
+    {
+        dejarDeExportarHistorial();
+        exportador = new ExportadorDeHistorial(archivo, formato);
+        estadisticas.getHistorial().setExportador(exportador);
+    }
+
+    /**
+     * Deja de exportar el historial y termina de escribir los pasos ya
+     * registrados.
+     */
+    public void dejarDeExportarHistorial()
+    {
+        if(exportador != null) {
+            estadisticas.getHistorial().setExportador(null);
+            exportador.cerrar();
+            exportador = null;
+        }
+    }
+
+    /**
+     * @return La cantidad de cada especie en los pasos desde el inicio,
+     *         con los pasos más viejos resumidos.
+     */
+    public HistorialDePoblacion getHistorial()
+    {
+        return estadisticas.getHistorial();
+    }
+
+    /**
+     * Activa o desactiva la medición de cada paso: duración de cada fase,
+     * población, nacimientos y muertes por segundo y bytes asignados,
+     * publicadas como MBean de la plataforma (ver MetricasDeSimulacion).
+     * Sin medición, cada fase sólo compara una referencia con null.
+     * @param medir Si se mide cada paso.
+     */
+    public void setMetricas(boolean medir)
+    {
+        if(metricas != null) {
+            metricas.retirar();
+            metricas = null;
+        }
+        if(medir) {
+            metricas = new MetricasDeSimulacion(prepararContadorDeEventos());
+            metricas.publicar();
+        }
+        liberarContadorDeEventos();
+    }
+
+    /**
+     * Emite eventos del simulador para el registro de vuelo (JFR): los
+     * pasos muestreados y los lentos, los cambios bruscos de población y
+     * cada llamada a mostrarEstado (ver RegistroDeVuelo). Sólo tienen
+     * efecto mientras JFR graba.
+     * @param pasosPorMuestra Cada cuántos pasos se registra uno.
+     * @param umbral El cambio relativo de una población desde el que se
+     *               registra un derrumbe o una explosión, por ej. 0.5.
+     * @param ventana En cuántos pasos se mide ese cambio.
+     */
+    public void registrarEnJfr(int pasosPorMuestra, double umbral, int ventana)
+    {
+        registroDeVuelo = new RegistroDeVuelo(prepararContadorDeEventos(), pasosPorMuestra, umbral, ventana);
+    }
+
+    /**
+     * Deja de emitir eventos para el registro de vuelo.
+     */
+    public void dejarDeRegistrarEnJfr()
+    {
+        registroDeVuelo = null;
+        liberarContadorDeEventos();
+    }
+
+    /**
+     * @return El contador de nacimientos y muertes de los campos, que se
+     *         crea si todavía no existe.
+     */
+    private ContadorDeEventos prepararContadorDeEventos()
+    {
+        if(contadorDeEventos == null) {
+            contadorDeEventos = new ContadorDeEventos();
+            campo.setContadorDeEventos(contadorDeEventos);
+            campoActualizado.setContadorDeEventos(contadorDeEventos);
+        }
+        return contadorDeEventos;
+    }
+
+    /**
+     * Quita el contador de nacimientos y muertes si ya nadie lo usa.
+     */
+    private void liberarContadorDeEventos()
+    {
+        if(metricas == null && registroDeVuelo == null && contadorDeEventos != null) {
+            campo.setContadorDeEventos(null);
+            campoActualizado.setContadorDeEventos(null);
+            contadorDeEventos = null;
+        }
+    }
+
+    /**
+     * @return Las mediciones de cada paso, o null si no se mide.
+     */
+    public MetricasDeSimulacion getMetricas()
+    {
+        return metricas;
+    }
+
+    /**
+     * Activa o desactiva el reciclado de animales: los conejos y zorros
+     * que mueren se guardan y se vuelven a usar en los nacimientos, en
+     * lugar de crear objetos nuevos en cada paso. No cambia el resultado
+     * de la simulación.
+     * @param reciclar Si se reciclan los animales.
+     */
+    public void setReciclado(boolean reciclar)
+    {
+        reserva = reciclar ? new ReservaDeAnimales() : null;
+        animales.setReserva(reserva);
+        campo.setReserva(reserva);
+        campoActualizado.setReserva(reserva);
+    }
+
+    /**
+     * @return La reserva de animales reciclados, con su tasa de aciertos
+     *         y su tamaño, o null si no se reciclan.
+     */
+    public ReservaDeAnimales getReserva()
+    {
+        return reserva;
+    }
+
+    /**
+     * Agrega o quita un índice de densidad común a ambos campos, para
+     * contar especies por región sin recorrerla (ver contarEnRegion).
+     * @param lado El lado de las baldosas del índice: 1 para cuentas de
+     *             costo fijo, más para usar menos memoria a cambio de
+     *             contar el borde de cada región fila por fila; 0 para
+     *             quitarlo.
+     */
+    public void setIndiceDeDensidad(int lado)
+    {
+        IndiceDeDensidad indice = null;
+        if(lado > 0) {
+            indice = new IndiceDeDensidad(campo.getLargo(), campo.getAncho(), lado);
+        }
+        campo.setIndiceDeDensidad(indice);
+        campoActualizado.setIndiceDeDensidad(indice);
+    }
+
+    /**
+     * Cuenta las posiciones de una especie en un rectángulo del campo
+     * actual (ver Campo.contarEnRegion).
+     * @param especie Un código de especie distinto de Especie.VACIO.
+     * @param fila La primera fila del rectángulo.
+     * @param columna La primera columna del rectángulo.
+     * @param filas La cantidad de filas del rectángulo.
+     * @param columnas La cantidad de columnas del rectángulo.
+     * @return La cantidad de posiciones de la especie en el rectángulo.
+     */
+    public long contarEnRegion(int especie, int fila, int columna, int filas, int columnas)
+    {
+        return campo.contarEnRegion(especie, fila, columna, filas, columnas);
+    }
+
+    /**
+     * Activa o desactiva el crecimiento de la hierba: entre pasos, las
+     * matas envejecen, brotan en las posiciones libres vecinas y se secan
+     * (ver Hierba.crecer). Sin crecimiento, la hierba queda fija donde
+     * se sembró. El crecimiento no usa los flujos aleatorios de los
+     * animales, así que todos los motores dan el mismo resultado.
+     * @param crecer Si la hierba crece.
+     */
+    public void setCrecimientoDeHierba(boolean crecer)
+    {
+        hierbaQueCrece = crecer;
+    }
+
+    /**
+     * @return La semilla de la simulación.
+     */
+    public long getSemilla()
+    {
+        return semilla;
+    }
+
+    /**
+     * Vuelve al paso cero con otra semilla, reusando los campos. Sirve
+     * para ejecutar muchas corridas seguidas sin crear un simulador
+     * para cada una. El motor en uso, que recibe la semilla en cada paso,
+     * sigue con la nueva: la corrida es la misma que la de un simulador
+     * nuevo con esa semilla y ese motor.
+     * @param semilla La semilla de la nueva corrida.
+     */
+    public void reiniciar(long semilla)
+    {
+        this.semilla = semilla;
+        inicializar();
+    }
+
     /**
      * Incializa la simulación en un punto de inicio.
      */
@@ -138,44 +723,262 @@ public class Simulador
     {
         paso = 0;
         animales.clear();
-        nuevosAnimales.clear();
+        if(reserva != null) {
+            reserva.vaciar();
+        }
         campo.limpiar();
         campoActualizado.limpiar();
+        if(hierba != null) {
+            hierba.limpiar();
+        }
         poblar(campo);
+        campo.sellar(paso);
+        estadisticas.inicializar();
+        estadisticas.getHistorial().limpiar();
+        estadisticas.registrarPaso(paso, campo);
         
         // Muestra el estado inicial en el visor.
-        visor.mostrarEstado(paso, campo);
+        notificarObservadores(true);
+    }
+
+    /**
+     * Continúa la simulación desde una imagen del campo guardada por
+     * AlmacenMapeado.
+     * @param archivo El archivo de la imagen.
+     */
+    private void continuarDesde(Path archivo)
+    {
+        animales.clear();
+        if(reserva != null) {
+            reserva.vaciar();
+        }
+        if(hierba != null) {
+            hierba.limpiar();
+        }
+        paso = (int) AlmacenMapeado.leerImagen(archivo, campo.getLargo(), campo.getAncho(),
+                                               new AlmacenMapeado.LectorDeRegistros() {
+            public void leer(int fila, int columna, int especie, int edad, int nivelDeComida,
+                             boolean vivo)
+            {
+                // Las imágenes anteriores a la capa de hierba la guardan
+                // como un ocupante más.
+                if(especie == Especie.HIERBA) {
+                    crearHierba().setNivel(fila, columna, Hierba.NIVEL_DE_MADUREZ);
+                    return;
+                }
+                Animal animal = crearAnimal(especie, edad, nivelDeComida);
+                animal.setUbicacion(campo.getUbicacion(fila, columna));
+                // Un muerto sólo ocupa su posición hasta el paso siguiente:
+                // vuelve al campo pero no a la lista.
+                if(vivo) {
+                    animales.add(animal);
+                }
+                else {
+                    animal.setMuerto();
+                }
+                campo.ubicar(animal);
+            }
+        });
+        FlujoAleatorio rand = Azar.flujo(semilla, paso, FLUJO_DE_INICIO);
+        if(hierba == null || hierba.getCantidad() == 0) {
+            // La imagen sólo guarda a los animales: se vuelve a sembrar la
+            // hierba en las posiciones libres, con la misma densidad.
+            sembrarHierba(campo, rand);
+        }
+        mezclar(animales, rand);
+        campo.sellar(paso);
+        estadisticas.inicializar();
+        estadisticas.getHistorial().limpiar();
+        estadisticas.registrarPaso(paso, campo);
+
+        notificarObservadores(true);
+    }
+
+    /**
+     * Guarda el estado completo de la simulación en un archivo, para
+     * continuarla luego con restaurar.
+     * @param archivo El archivo del punto de control.
+     */
+    public void guardar(Path archivo)
+    {
+        PuntoDeControl.guardar(archivo, paso, semilla, campo, animales);
+    }
+
+    /**
+     * Reemplaza el estado de la simulación por uno guardado con guardar.
+     * También toma la semilla guardada, que el motor en uso recibe en
+     * cada paso: con el mismo motor, los pasos siguientes son idénticos
+     * a los que siguieron al guardarlo (salvo con el motor concurrente,
+     * que no es reproducible).
+     * @param archivo El archivo del punto de control.
+     * @throws IllegalArgumentException Si el campo guardado no tiene las
+     *         dimensiones del campo de esta simulación.
+     * @throws IllegalStateException Si la cantidad de alguna especie en
+     *         el campo restaurado no es la que se guardó.
+     */
+    public void restaurar(Path archivo)
+    {
+        final int[][] guardadas = new int[1][];
+        animales.clear();
+        if(reserva != null) {
+            reserva.vaciar();
+        }
+        campo.limpiar();
+        campoActualizado.limpiar();
+        if(hierba != null) {
+            hierba.limpiar();
+        }
+        PuntoDeControl.leer(archivo, new PuntoDeControl.LectorDeEstado() {
+            public void leerCabecera(int pasoGuardado, int largo, int ancho, long semillaGuardada)
+            {
+                if(largo != campo.getLargo() || ancho != campo.getAncho()) {
+                    throw new IllegalArgumentException("El punto de control es de un campo de "
+                                                       + largo + "x" + ancho + ".");
+                }
+                paso = pasoGuardado;
+                semilla = semillaGuardada;
+            }
+
+            public void leerAnimal(int especie, int fila, int columna, int edad, int nivelDeComida,
+                                   boolean vivo, boolean enElCampo, boolean enLaLista)
+            {
+                Animal animal = crearAnimal(especie, edad, nivelDeComida);
+                animal.setUbicacion(campo.getUbicacion(fila, columna));
+                if(!vivo) {
+                    animal.setMuerto();
+                }
+                if(enLaLista) {
+                    animales.add(animal);
+                }
+                if(enElCampo) {
+                    campo.ubicar(animal);
+                }
+            }
+
+            public void leerHierba(int fila, int columna, int nivel)
+            {
+                crearHierba().setNivel(fila, columna, nivel);
+            }
+
+            public void leerCantidades(int[] cantidades)
+            {
+                guardadas[0] = cantidades;
+            }
+        });
+        if(guardadas[0] != null) {
+            for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+                if(campo.getCantidad(especie) != guardadas[0][especie]) {
+                    throw new IllegalStateException("El punto de control " + archivo + " guardó "
+                                                    + guardadas[0][especie] + " de "
+                                                    + Especie.getNombre(especie) + " y se restauraron "
+                                                    + campo.getCantidad(especie) + ".");
+                }
+            }
+        }
+        campo.sellar(paso);
+        estadisticas.inicializar();
+        estadisticas.getHistorial().limpiar();
+        estadisticas.registrarPaso(paso, campo);
+
+        notificarObservadores(true);
+    }
+
+    /**
+     * Crea un animal con el estado dado.
+     * @param especie El código de especie del animal.
+     * @param edad La edad del animal.
+     * @param nivelDeComida El nivel de comida, si es un zorro.
+     * @return El animal nuevo.
+     */
+    private static Animal crearAnimal(int especie, int edad, int nivelDeComida)
+    {
+        Animal animal;
+        switch(especie) {
+            case Especie.CONEJO:
+                animal = new Conejo(false);
+                break;
+            case Especie.ZORRO:
+                Zorro zorro = new Zorro(false);
+                zorro.setNivelDeComida(nivelDeComida);
+                animal = zorro;
+                break;
+            default:
+                throw new IllegalArgumentException("No es una especie de animal: " + especie);
+        }
+        animal.setEdad(edad);
+        return animal;
     }
     
     /**
-     * Puebla un campo con zorros y conejos.
+     * Puebla un campo con zorros, conejos y hierba.
      * @param campo El campo que se poblará.
      */
     private void poblar(Campo campo)
     {
-        Random rand = new Random();
+        FlujoAleatorio rand = Azar.flujo(semilla, 0, FLUJO_DE_INICIO);
+        // Los animales creados con edad por azar usan el mismo flujo.
+        Azar.usar(rand);
         campo.limpiar();
         for(int fila = 0; fila < campo.getLargo(); fila++) {
             for (int columna = 0; columna < campo.getAncho(); columna++) {
                 if (rand.nextDouble() <= PROBABILIDAD_DE_CREACION_DE_HIERBA) {
-                    Hierba hierba = new Hierba();
-                    hierba.setUbicacion(fila, columna);
-                    animales.add(hierba);
-                    campo.ubicar(hierba);
+                    crearHierba().setNivel(fila, columna, 1 + rand.nextInt(Hierba.NIVEL_MAXIMO));
                 } else if (rand.nextDouble() <= PROBABILIDAD_DE_CREACION_DEL_ZORRO) {
                     Zorro zorro = new Zorro(true);
-                    zorro.setUbicacion(fila, columna);
+                    zorro.setUbicacion(campo.getUbicacion(fila, columna));
                     animales.add(zorro);
                     campo.ubicar(zorro);
                 } else if (rand.nextDouble() <= PROBABILIDAD_DE_CREACION_DEL_CONEJO) {
                     Conejo conejo = new Conejo(true);
-                    conejo.setUbicacion(fila, columna);
+                    conejo.setUbicacion(campo.getUbicacion(fila, columna));
                     animales.add(conejo);
                     campo.ubicar(conejo);
                 }
                 // de lo contrario, la ubicación queda vacía.
             }
         }
-        Collections.shuffle(animales);
+        mezclar(animales, rand);
+    }
+
+    /**
+     * Siembra hierba en las posiciones libres de un campo, con la misma
+     * probabilidad que al poblarlo.
+     */
+    private void sembrarHierba(Campo campo, RandomGenerator rand)
+    {
+        for(int fila = 0; fila < campo.getLargo(); fila++) {
+            for(int columna = 0; columna < campo.getAncho(); columna++) {
+                if(campo.getAnimalEn(fila, columna) == null
+                        && rand.nextDouble() <= PROBABILIDAD_DE_CREACION_DE_HIERBA) {
+                    crearHierba().setNivel(fila, columna, 1 + rand.nextInt(Hierba.NIVEL_MAXIMO));
+                }
+            }
+        }
+    }
+
+    /**
+     * Crea la hierba, común a ambos campos, si todavía no existe.
+     * @return La hierba.
+     */
+    private Hierba crearHierba()
+    {
+        if(hierba == null) {
+            hierba = new Hierba(campo.getLargo(), campo.getAncho());
+            campo.setHierba(hierba);
+            if(campoActualizado != null) {
+                campoActualizado.setHierba(hierba);
+            }
+        }
+        return hierba;
+    }
+
+    /**
+     * Mezcla una lista al azar (Fisher-Yates) con el flujo dado.
+     */
+    private static void mezclar(List<Animal> lista, RandomGenerator rand)
+    {
+        for(int i = lista.size() - 1; i > 0; i--) {
+            Collections.swap(lista, i, rand.nextInt(i + 1));
+        }
     }
 }
@@ -0,0 +1,35 @@
+/**
+ * Las formas de almacenar el contenido del campo que se pueden elegir
+ * al crear un Simulador.
+ */
+public enum TipoDeCampo
+{
+    // Una matriz de referencias a los animales.
+    DENSO,
+    // Arreglos primitivos, fila por fila; hasta 2^28 posiciones.
+    PRIMITIVO,
+    // Bloques que se crean sólo donde hay animales.
+    POR_BLOQUES,
+    // Una matriz cuyas posiciones se ocupan con operaciones atómicas.
+    CONCURRENTE;
+
+    /**
+     * Crea un campo vacío con este tipo de almacenamiento.
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     * @return El campo nuevo.
+     */
+    public Campo crearCampo(int largo, int ancho)
+    {
+        switch(this) {
+            case PRIMITIVO:
+                return new Campo(largo, ancho, new AlmacenPrimitivo(largo, ancho));
+            case POR_BLOQUES:
+                return new Campo(largo, ancho, new AlmacenPorBloques(largo, ancho));
+            case CONCURRENTE:
+                return new CampoConcurrente(largo, ancho);
+            default:
+                return new Campo(largo, ancho);
+        }
+    }
+}
@@ -7,9 +7,12 @@
  */
 public class Ubicacion
 {
+    // Valor empaquetado que no corresponde a ninguna posición.
+    public static final long NINGUNA = -1L;
+
     // Fila y columna de las posiciones.
-    private int fila;
-    private int columna;
+    private final int fila;
+    private final int columna;
 
     /**
      * Representa una fila y una columna.
@@ -46,14 +49,54 @@ public class Ubicacion
     }
     
     /**
-     * Usa los 16 bits superiores para el valor de fila y los inferiores
-     * para la columna. Excepto mallas muy grandes, esto debería producir
-     * un código hash único para cada par (fila, columna).
+     * Mezcla los bits de la forma empaquetada, que es única para cada
+     * par (fila, columna), para repartir bien las posiciones aun en
+     * mallas muy grandes.
      * @return Un código hash para la posición.
      */
     public int hashCode()
     {
-        return (fila << 16) + columna;
+        long h = empaquetar(fila, columna) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return La posición empaquetada en un long.
+     */
+    public long empaquetada()
+    {
+        return empaquetar(fila, columna);
+    }
+
+    /**
+     * Empaqueta una posición en un long: la fila en los 32 bits
+     * superiores y la columna en los inferiores. Distintas posiciones
+     * producen siempre valores distintos.
+     * @param fila La fila.
+     * @param columna La columna.
+     * @return La posición empaquetada.
+     */
+    public static long empaquetar(int fila, int columna)
+    {
+        return ((long) fila << 32) | (columna & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param empaquetada Una posición empaquetada.
+     * @return La fila de la posición.
+     */
+    public static int filaDe(long empaquetada)
+    {
+        return (int) (empaquetada >> 32);
+    }
+
+    /**
+     * @param empaquetada Una posición empaquetada.
+     * @return La columna de la posición.
+     */
+    public static int columnaDe(long empaquetada)
+    {
+        return (int) empaquetada;
     }
     
     /**
@@ -0,0 +1,135 @@
+/**
+ * Tablas precalculadas para recorrer las ocho posiciones adyacentes a
+ * una posición sin crear objetos.
+ * Cada dirección se identifica con un número de 0 a 7. Se precalculan
+ * todas las 8! ordenaciones de las direcciones, de modo que mezclar las
+ * adyacencias se reduce a sortear el número de una ordenación. Las
+ * posiciones de borde y de esquina usan una máscara con las direcciones
+ * que caen dentro del campo; saltear las direcciones inválidas de una
+ * ordenación al azar da una ordenación al azar de las válidas.
+ */
+public final class Vecindad
+{
+    // Cantidad de direcciones adyacentes.
+    public static final int DIRECCIONES = 8;
+    // Cantidad de ordenaciones posibles de las direcciones (8!).
+    public static final int ORDENACIONES = 40320;
+
+    // Desplazamientos de fila y columna de cada dirección.
+    private static final int[] DELTA_FILA =    { -1, -1, -1,  0, 0,  1, 1, 1 };
+    private static final int[] DELTA_COLUMNA = { -1,  0,  1, -1, 1, -1, 0, 1 };
+
+    // Direcciones válidas según la posición de la fila (o columna) dentro
+    // del campo: interior, primera, última, o única fila (o columna).
+    private static final int[] MASCARA_POR_FILA = new int[4];
+    private static final int[] MASCARA_POR_COLUMNA = new int[4];
+
+    // Las 8! ordenaciones, una detrás de la otra.
+    private static final byte[] ORDENES = new byte[ORDENACIONES * DIRECCIONES];
+
+    static {
+        for(int d = 0; d < DIRECCIONES; d++) {
+            for(int borde = 0; borde < 4; borde++) {
+                if(valida(DELTA_FILA[d], borde)) {
+                    MASCARA_POR_FILA[borde] |= 1 << d;
+                }
+                if(valida(DELTA_COLUMNA[d], borde)) {
+                    MASCARA_POR_COLUMNA[borde] |= 1 << d;
+                }
+            }
+        }
+        // Genera las ordenaciones en orden lexicográfico.
+        byte[] orden = { 0, 1, 2, 3, 4, 5, 6, 7 };
+        for(int n = 0; n < ORDENACIONES; n++) {
+            System.arraycopy(orden, 0, ORDENES, n * DIRECCIONES, DIRECCIONES);
+            siguienteOrdenacion(orden);
+        }
+    }
+
+    private Vecindad()
+    {
+    }
+
+    /**
+     * @param direccion Una dirección de 0 a 7.
+     * @return El desplazamiento de fila de la dirección.
+     */
+    public static int deltaFila(int direccion)
+    {
+        return DELTA_FILA[direccion];
+    }
+
+    /**
+     * @param direccion Una dirección de 0 a 7.
+     * @return El desplazamiento de columna de la dirección.
+     */
+    public static int deltaColumna(int direccion)
+    {
+        return DELTA_COLUMNA[direccion];
+    }
+
+    /**
+     * Devuelve la k-ésima dirección de una ordenación.
+     * @param ordenacion Un número de ordenación, de 0 a ORDENACIONES - 1.
+     * @param k La posición dentro de la ordenación, de 0 a 7.
+     * @return Una dirección de 0 a 7.
+     */
+    public static int direccion(int ordenacion, int k)
+    {
+        return ORDENES[ordenacion * DIRECCIONES + k];
+    }
+
+    /**
+     * Calcula qué direcciones adyacentes a una posición caen dentro de
+     * un campo.
+     * @param fila La fila de la posición.
+     * @param columna La columna de la posición.
+     * @param largo El largo del campo.
+     * @param ancho El ancho del campo.
+     * @return Una máscara con el bit d encendido si la dirección d es válida.
+     */
+    public static int mascara(int fila, int columna, int largo, int ancho)
+    {
+        int bordeFila = (fila == 0 ? 1 : 0) | (fila == largo - 1 ? 2 : 0);
+        int bordeColumna = (columna == 0 ? 1 : 0) | (columna == ancho - 1 ? 2 : 0);
+        return MASCARA_POR_FILA[bordeFila] & MASCARA_POR_COLUMNA[bordeColumna];
+    }
+
+    /**
+     * @return true si un desplazamiento es válido para una posición de
+     *         borde dado (bit 1: primera, bit 2: última).
+     */
+    private static boolean valida(int delta, int borde)
+    {
+        return !(delta < 0 && (borde & 1) != 0) && !(delta > 0 && (borde & 2) != 0);
+    }
+
+    /**
+     * Transforma una ordenación en la siguiente en orden lexicográfico.
+     */
+    private static void siguienteOrdenacion(byte[] orden)
+    {
+        int i = orden.length - 2;
+        while(i >= 0 && orden[i] >= orden[i + 1]) {
+            i--;
+        }
+        if(i < 0) {
+            return;
+        }
+        int j = orden.length - 1;
+        while(orden[j] <= orden[i]) {
+            j--;
+        }
+        intercambiar(orden, i, j);
+        for(int a = i + 1, b = orden.length - 1; a < b; a++, b--) {
+            intercambiar(orden, a, b);
+        }
+    }
+
+    private static void intercambiar(byte[] orden, int i, int j)
+    {
+        byte temp = orden[i];
+        orden[i] = orden[j];
+        orden[j] = temp;
+    }
+}
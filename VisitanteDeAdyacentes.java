@@ -0,0 +1,14 @@
+/**
+ * Recibe, una por una, las posiciones adyacentes que recorre
+ * Campo.recorrerAdyacentes.
+ */
+public interface VisitanteDeAdyacentes
+{
+    /**
+     * Visita una posición adyacente.
+     * @param fila La fila de la posición.
+     * @param columna La columna de la posición.
+     * @return true para terminar el recorrido en esta posición.
+     */
+    boolean visitar(int fila, int columna);
+}
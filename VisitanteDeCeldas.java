@@ -0,0 +1,14 @@
+/**
+ * Recibe, una por una, las posiciones ocupadas que recorre
+ * Campo.recorrerOcupadas.
+ */
+public interface VisitanteDeCeldas
+{
+    /**
+     * Visita una posición ocupada.
+     * @param fila La fila de la posición.
+     * @param columna La columna de la posición.
+     * @param animal El ocupante de la posición.
+     */
+    void visitar(int fila, int columna, Animal animal);
+}
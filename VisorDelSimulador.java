@@ -1,6 +1,9 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import javax.swing.*;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -9,12 +12,17 @@ import java.util.HashMap;
  * que representa su contenido. Utiliza un color de fondo por
  * defecto. Los colores para cada tipo de especie se pueden
  * definir utilizando el método setColor.
+ * La simulación sólo copia el campo a un cuadro compacto y lo publica
+ * en un BufferDeCuadros; un hilo propio del visor lo dibuja, y Swing se
+ * actualiza en su hilo de eventos. Si el dibujo no da abasto se saltean
+ * cuadros, pero la simulación no se demora por el tamaño de la ventana
+ * ni por la frecuencia de pintado.
  * 
  * @author David J. Barnes and Michael Kolling
  * @author Traducción: Maximiliano A. Eschoyez
  * @version 2006.03.30
  */
-public class VisorDelSimulador extends JFrame
+public class VisorDelSimulador extends JFrame implements ObservadorDeSimulacion
 {
     // Color utilizado para las ubicaciones vacías.
     private static final Color COLOR_VACIO = Color.white;
@@ -22,6 +30,9 @@ public class VisorDelSimulador extends JFrame
     // Color utilizado para los objetos que no tienen definido un color.
     private static final Color COLOR_DESCONOCIDO = Color.gray;
 
+    // La clase de cada código de especie, para buscar su color.
+    private static final Class<?>[] CLASES = { null, Conejo.class, Zorro.class, Hierba.class };
+
     private final String PREFIJO_DE_PASO = "Paso: ";
     private final String PREFIJO_DE_POBLACION = "Poblacion: ";
     private JLabel etiquetaDePaso, poblacion;
@@ -29,8 +40,14 @@ public class VisorDelSimulador extends JFrame
     
     // Un mapa para almacenar los colores de los participantes de la simulación
     private HashMap<Class, Color> colores;
+    // El color RGB de cada código de especie, armado a partir del mapa;
+    // lo lee el hilo de dibujo.
+    private volatile int[] coloresPorEspecie;
     // Un objeto para el cómputo y almacenamiento de estadísticas.
     private EstadisticasDelCampo estadisticas;
+    // Los cuadros que la simulación publica y el hilo de dibujo toma.
+    private BufferDeCuadros cuadros;
+    private Thread dibujante;
 
     /**
      * Crea un visor del largo y ancho indicados.
@@ -41,6 +58,9 @@ public class VisorDelSimulador extends JFrame
     {
         estadisticas = new EstadisticasDelCampo();
         colores = new HashMap<Class, Color>();
+        setColor(Conejo.class, Color.orange);
+        setColor(Zorro.class, Color.blue);
+        setColor(Hierba.class, Color.green);
 
         setTitle("Simulacion de zorros y conejos");
         etiquetaDePaso = new JLabel(PREFIJO_DE_PASO, JLabel.CENTER);
@@ -56,6 +76,11 @@ public class VisorDelSimulador extends JFrame
         contents.add(poblacion, BorderLayout.SOUTH);
         pack();
         setVisible(true);
+
+        cuadros = new BufferDeCuadros(largo, ancho);
+        dibujante = new Thread(this::dibujarCuadros, "VisorDelSimulador");
+        dibujante.setDaemon(true);
+        dibujante.start();
     }
     
     /**
@@ -63,9 +88,15 @@ public class VisorDelSimulador extends JFrame
      * @param claseAnimal El objeto animal de la clase.
      * @param color El color a utilizar para el animal de la clase dada.
      */
-    public void setColor(Class claseAnimal, Color color)
+    public synchronized void setColor(Class claseAnimal, Color color)
     {
         colores.put(claseAnimal, color);
+        int[] nuevos = new int[Especie.CANTIDAD];
+        nuevos[Especie.VACIO] = COLOR_VACIO.getRGB();
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            nuevos[especie] = getColor(CLASES[especie]).getRGB();
+        }
+        coloresPorEspecie = nuevos;
     }
 
     /**
@@ -84,45 +115,102 @@ public class VisorDelSimulador extends JFrame
     }
 
     /**
-     * Muestra el estado actual del campo.
+     * Publica el estado actual del campo para que el hilo de dibujo lo
+     * muestre. Se llama desde el hilo de la simulación y no espera al
+     * dibujo.
      * @param paso En qué paso de iteración se encuentra.
      * @param campo El campo cuye estado debe mostrarse.
      */
     public void mostrarEstado(int paso, Campo campo)
     {
-        if(!isVisible())
-            setVisible(true);
-            
-        etiquetaDePaso.setText(PREFIJO_DE_PASO + paso);
+        cuadros.obtenerParaLlenar().capturar(paso, campo);
+        cuadros.publicar();
+    }
+
+    /**
+     * Determina si la simulacion debe continuar.
+     * @return true Si sigue viva mas de una especie.
+     */
+    public boolean esViable(Campo campo)
+    {
+        // El visor ya no cuenta al mostrar cada paso: se vuelve a contar
+        // desde el campo.
         estadisticas.inicializar();
-        
-        visorDeCampo.prepararParaPintar();
-
-        for(int fila = 0; fila < campo.getLargo(); fila++) {
-            for(int columna = 0; columna < campo.getAncho(); columna++) {
-                Animal animal = campo.getAnimalEn(fila, columna);
-                if(animal != null) {
-                    estadisticas.incrementarContador(animal.getClass());
-                    visorDeCampo.dibujarMarca(columna, fila, getColor(animal.getClass()));
+        return estadisticas.esViable(campo);
+    }
+
+    /**
+     * @return Cuántos cuadros publicados por la simulación no llegaron a
+     *         dibujarse porque llegó otro más nuevo.
+     */
+    public long getCuadrosDescartados()
+    {
+        return cuadros.getDescartados();
+    }
+
+    /**
+     * Cierra la ventana y termina el hilo de dibujo.
+     */
+    public void dispose()
+    {
+        if(cuadros != null) {
+            cuadros.cerrar();
+        }
+        super.dispose();
+    }
+
+    /**
+     * Cuerpo del hilo de dibujo: dibuja cada cuadro que toma y pide a
+     * Swing que muestre el resultado.
+     */
+    private void dibujarCuadros()
+    {
+        try {
+            CuadroDelCampo cuadro;
+            while((cuadro = cuadros.tomar()) != null) {
+                final String paso;
+                final String detalles;
+                try {
+                    visorDeCampo.dibujar(cuadro, coloresPorEspecie);
+                    paso = PREFIJO_DE_PASO + cuadro.getPaso();
+                    detalles = PREFIJO_DE_POBLACION + getDetallesDePoblacion(cuadro);
                 }
-                else {
-                    visorDeCampo.dibujarMarca(columna, fila, COLOR_VACIO);
+                finally {
+                    cuadros.devolver();
                 }
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        if(!isVisible()) {
+                            setVisible(true);
+                        }
+                        etiquetaDePaso.setText(paso);
+                        poblacion.setText(detalles);
+                        visorDeCampo.repaint();
+                    }
+                });
             }
         }
-        estadisticas.cuentaFinalizada();
-
-        poblacion.setText(PREFIJO_DE_POBLACION + estadisticas.getDetallesDePoblacion(campo));
-        visorDeCampo.repaint();
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
-     * Determina si la simulacion debe continuar.
-     * @return true Si sigue viva mas de una especie.
+     * @return Un texto con la cantidad de cada especie presente en el cuadro.
      */
-    public boolean esViable(Campo campo)
+    private static String getDetallesDePoblacion(CuadroDelCampo cuadro)
     {
-        return estadisticas.esViable(campo);
+        StringBuilder detalles = new StringBuilder();
+        for(int especie = 1; especie < Especie.CANTIDAD; especie++) {
+            if(cuadro.getCantidad(especie) > 0) {
+                detalles.append(Especie.getNombre(especie));
+                detalles.append(": ");
+                detalles.append(cuadro.getCantidad(especie));
+                detalles.append(' ');
+            }
+        }
+        return detalles.toString();
     }
     
     /**
@@ -132,16 +220,34 @@ public class VisorDelSimulador extends JFrame
      * Este componente muestra el campo.
      * Esto es un topico avanzado sobre interfaz de usuario - puede
      * ignorarse para el caso de este proyecto.
+     * Hay tres imágenes, que se pasan como los cuadros de un
+     * BufferDeCuadros: la que el hilo de dibujo pinta, la última
+     * terminada y la que Swing muestra. El hilo de dibujo nunca pinta la
+     * que se muestra, que puede volver a copiarse a la pantalla en
+     * cualquier momento, ni la terminada que Swing todavía no tomó; si
+     * Swing no la tomó, la reemplaza la siguiente. Escribe directamente en el
+     * arreglo de píxeles de la imagen, sin llamadas a Java2D por
+     * posición: llena la primera línea de píxeles de cada posición que
+     * cambió con el color de su especie y copia esa línea en las demás
+     * líneas de la fila, así pintar un cuadro completo es copiar memoria.
      */
     private class VisorDeCampo extends JPanel
     {
         private final int FACTOR_DE_ESCALA_DEL_VISOR_DE_MALLA = 6;
+        private static final int IMAGENES = 3;
+        // Indica que ninguna imagen está en ese estado.
+        private static final int NINGUNA = -1;
 
         private int anchoDeMalla, largoDeMalla;
-        private int escalaX, escalaY;
-        Dimension tamanio;
-        private Graphics g;
-        private Image imagenDelCampo;
+        // Las tres imágenes, y los códigos de especie pintados en cada
+        // una para sólo volver a pintar las posiciones que cambiaron.
+        private final BufferedImage[] imagenes;
+        private final byte[][] pintadas;
+        // Los índices de la imagen terminada que Swing todavía no tomó y
+        // de la que muestra, o NINGUNA; se cambian con turnos tomado.
+        private final Object turnos = new Object();
+        private int lista = NINGUNA;
+        private int enPantalla = NINGUNA;
 
         /**
          * Crea un nuevo componente de VisorDeCampo.
@@ -150,7 +256,8 @@ public class VisorDelSimulador extends JFrame
         {
             largoDeMalla = largo;
             anchoDeMalla = ancho;
-            tamanio = new Dimension(0, 0);
+            imagenes = new BufferedImage[IMAGENES];
+            pintadas = new byte[IMAGENES][];
         }
 
         /**
@@ -163,34 +270,100 @@ public class VisorDelSimulador extends JFrame
         }
 
         /**
-         * Prepara para un nuevo ciclo de pintura. Como el componente
-         * puede redimensionarse, calcula nuevamente el factor de escala.
-          */
-        public void prepararParaPintar()
+         * Pinta un cuadro en la imagen que no se está mostrando y la deja
+         * lista. Se llama desde el hilo de dibujo. Si el componente no
+         * cambió de tamaño, sólo se pintan las filas con posiciones que
+         * cambiaron desde la última vez que se pintó esa imagen. Si el
+         * componente es más chico que el campo, cada posición ocupa un
+         * píxel y paintComponent reduce la imagen.
+         * @param colores El color RGB de cada código de especie.
+         */
+        public void dibujar(CuadroDelCampo cuadro, int[] colores)
         {
-            if(! tamanio.equals(getSize())) {  // si el tamaño a cambiado...
-                tamanio = getSize();
-                imagenDelCampo = visorDeCampo.createImage(tamanio.width, tamanio.height);
-                g = imagenDelCampo.getGraphics();
-
-                escalaX = tamanio.width / anchoDeMalla;
-                if(escalaX < 1) {
-                    escalaX = FACTOR_DE_ESCALA_DEL_VISOR_DE_MALLA;
+            Dimension tamanio = getSize();
+            if(tamanio.width <= 0 || tamanio.height <= 0) {
+                tamanio = getPreferredSize();
+            }
+            int escalaX = Math.max(1, tamanio.width / anchoDeMalla);
+            int escalaY = Math.max(1, tamanio.height / largoDeMalla);
+            int anchoDeImagen = Math.max(tamanio.width, anchoDeMalla * escalaX);
+            int largoDeImagen = Math.max(tamanio.height, largoDeMalla * escalaY);
+            int proxima = elegirImagenLibre();
+            BufferedImage imagen = imagenes[proxima];
+            byte[] pintada = pintadas[proxima];
+            boolean nueva = imagen == null || imagen.getWidth() != anchoDeImagen
+                            || imagen.getHeight() != largoDeImagen;
+            if(nueva) {
+                imagen = new BufferedImage(anchoDeImagen, largoDeImagen, BufferedImage.TYPE_INT_RGB);
+                imagenes[proxima] = imagen;
+                pintada = new byte[cuadro.getEspecies().length];
+                pintadas[proxima] = pintada;
+            }
+            int[] pixeles = ((DataBufferInt) imagen.getRaster().getDataBuffer()).getData();
+            if(nueva) {
+                Arrays.fill(pixeles, getBackground().getRGB());
+            }
+            // Cada posición deja una línea y una columna de fondo entre
+            // ella y la siguiente, salvo que mida un solo píxel.
+            int anchoDeMarca = escalaX > 1 ? escalaX - 1 : 1;
+            int largoDeMarca = escalaY > 1 ? escalaY - 1 : 1;
+            int anchoDeFila = anchoDeMalla * escalaX;
+            byte[] especies = cuadro.getEspecies();
+            for(int fila = 0; fila < largoDeMalla; fila++) {
+                int primera = fila * anchoDeMalla;
+                int linea = fila * escalaY * anchoDeImagen;
+                boolean cambio = false;
+                for(int columna = 0; columna < anchoDeMalla; columna++) {
+                    int i = primera + columna;
+                    byte especie = especies[i];
+                    if(nueva || especie != pintada[i]) {
+                        int desde = linea + columna * escalaX;
+                        Arrays.fill(pixeles, desde, desde + anchoDeMarca, colores[especie]);
+                        pintada[i] = especie;
+                        cambio = true;
+                    }
                 }
-                escalaY = tamanio.height / largoDeMalla;
-                if(escalaY < 1) {
-                    escalaY = FACTOR_DE_ESCALA_DEL_VISOR_DE_MALLA;
+                if(cambio) {
+                    for(int y = 1; y < largoDeMarca; y++) {
+                        System.arraycopy(pixeles, linea, pixeles, linea + y * anchoDeImagen, anchoDeFila);
+                    }
                 }
             }
+            synchronized(turnos) {
+                lista = proxima;
+            }
         }
-        
+
         /**
-         * Pinta la ubicación con el color indicado.
+         * @return Una imagen que no está lista ni en pantalla; con tres
+         *         siempre hay una.
          */
-        public void dibujarMarca(int x, int y, Color color)
+        private int elegirImagenLibre()
         {
-            g.setColor(color);
-            g.fillRect(x * escalaX, y * escalaY, escalaX-1, escalaY-1);
+            synchronized(turnos) {
+                for(int i = 0; i < IMAGENES; i++) {
+                    if(i != lista && i != enPantalla) {
+                        return i;
+                    }
+                }
+            }
+            throw new IllegalStateException("No hay imágenes libres.");
+        }
+
+        /**
+         * Toma la última imagen terminada, si la hay, como la imagen en
+         * pantalla. Se llama desde el hilo de eventos de Swing.
+         * @return La imagen a mostrar, o null si todavía no hay ninguna.
+         */
+        private BufferedImage tomarImagenParaMostrar()
+        {
+            synchronized(turnos) {
+                if(lista != NINGUNA) {
+                    enPantalla = lista;
+                    lista = NINGUNA;
+                }
+                return enPantalla != NINGUNA ? imagenes[enPantalla] : null;
+            }
         }
 
         /**
@@ -199,14 +372,16 @@ public class VisorDelSimulador extends JFrame
          */
         public void paintComponent(Graphics g)
         {
-            if(imagenDelCampo != null) {
+            super.paintComponent(g);
+            BufferedImage imagen = tomarImagenParaMostrar();
+            if(imagen != null) {
                 Dimension tamanioActual = getSize();
-                if(tamanio.equals(tamanioActual)) {
-                    g.drawImage(imagenDelCampo, 0, 0, null);
+                if(imagen.getWidth() == tamanioActual.width && imagen.getHeight() == tamanioActual.height) {
+                    g.drawImage(imagen, 0, 0, null);
                 }
                 else {
                     // Escalar la imagen previa.
-                    g.drawImage(imagenDelCampo, 0, 0, tamanioActual.width, tamanioActual.height, null);
+                    g.drawImage(imagen, 0, 0, tamanioActual.width, tamanioActual.height, null);
                 }
             }
         }
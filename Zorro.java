@@ -1,6 +1,5 @@
 import java.util.List;
-import java.util.Iterator;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 /**
  * Un modelo sencillo de zorro.
@@ -13,25 +12,26 @@ import java.util.Random;
 public class Zorro extends Animal
 {
     // Características compartidas por todos los zorros (campos estáticos).
+    // MotorDeColumnas aplica las mismas reglas con estos valores.
     
     // La edad en que un zorro comienza a reproducirse
-    private static final int EDAD_DE_REPRODUCCION = 10;
+    static final int EDAD_DE_REPRODUCCION = 10;
     // La edad que puede vivir un zorro.
-    private static final int EDAD_MAX = 150;
+    static final int EDAD_MAX = 150;
     // La probabilidad de reproducción de un zorro.
-    private static final double PROBABILIDAD_DE_REPRODUCCION = 0.09;
+    static final double PROBABILIDAD_DE_REPRODUCCION = 0.09;
     // El número máximo de nacimientos.
-    private static final int MAXIMO_TAMANIO_DE_CAMADA = 3;
+    static final int MAXIMO_TAMANIO_DE_CAMADA = 3;
     // El valor alimentario de un conejo. Este es el número de pasos
     // que un zorro puede dar antes de necesitar comer otro conejo.
-    private static final int VALOR_COMIDA_CONEJO = 4;
-    // Un número aleatorio para controlar la reproducción.
-    private static final Random rand = new Random();
+    static final int VALOR_COMIDA_CONEJO = 4;
     
     // Características individuales (campos de instancia).
 
     // Nivel de comida del zorro, que se incrementa al comer conejos.
     private int nivelDeComida;
+    // Recorre las posiciones adyacentes buscando comida.
+    private final BuscadorDeComida buscador = new BuscadorDeComida();
 
     /**
      * Crea un nuevo zorro. Se puede crear un zorro con edad
@@ -43,6 +43,7 @@ public class Zorro extends Animal
     {
         super();
         if(edadPorAzar) {
+            RandomGenerator rand = Azar.generador();
             setEdad(rand.nextInt(EDAD_MAX));
             nivelDeComida = rand.nextInt(VALOR_COMIDA_CONEJO);
         }
@@ -63,31 +64,30 @@ public class Zorro extends Animal
      */
     public void act(Campo campoActual, Campo campoActualizado, List<Animal> nuevosAnimales)
     {
-        incrementarEdad();
-        incrementarHambre();
+        incrementarEdad(campoActualizado);
+        incrementarHambre(campoActualizado);
         if(estaVivo()) {
             // Nacieron nuevos zorros en direcciones adyacentes.
             int nacimientos = reproducir();
             for(int n = 0; n < nacimientos; n++) {
-                Zorro nuevoZorro = new Zorro(false);
+                Zorro nuevoZorro = campoActualizado.nuevoZorro();
                 nuevosAnimales.add(nuevoZorro);
                 nuevoZorro.setUbicacion(
                         campoActualizado.direccionAdyacentePorAzar(getUbicacion()));
                 campoActualizado.ubicar(nuevoZorro);
+                campoActualizado.registrarEvento(CausaDeEvento.NACIMIENTO, nuevoZorro);
             }
             // Se mueve hacia la fuente de comida, si es que la encuentra.
             Ubicacion nuevaUbicacion = buscarComida(campoActual, getUbicacion());
-            if(nuevaUbicacion == null) {  // no se encontró comida - se mueve aleatoriamente
-                nuevaUbicacion = campoActualizado.direccionAdyacenteLibre(getUbicacion());
-            }
             if(nuevaUbicacion != null) {
                 setUbicacion(nuevaUbicacion);
                 campoActualizado.ubicar(this);  // establece la posición
             }
-            else {
+            // no se encontró comida - se mueve aleatoriamente
+            else if(!campoActualizado.trasladarAAdyacenteLibre(this)) {
                 // no puede moverse ni estar, superpoblación, todas las
                 // direcciones están ocupadas
-                setMuerto();
+                morir(campoActualizado, CausaDeEvento.SUPERPOBLACION);
             }
         }
     }
@@ -95,24 +95,52 @@ public class Zorro extends Animal
     /**
      * Aumenta la edad.
      * Podría dar por resultado la muerte del zorro.
+     * @param campo El campo en el que se registra la muerte.
      */
-    private void incrementarEdad()
+    private void incrementarEdad(Campo campo)
     {
         setEdad(getEdad() + 1);
         if(getEdad() > EDAD_MAX) {
-            setMuerto();
+            morir(campo, CausaDeEvento.VEJEZ);
         }
     }
     
+    /**
+     * Deja al zorro como recién nacido, sin hambre.
+     */
+    protected void renacer()
+    {
+        super.renacer();
+        nivelDeComida = VALOR_COMIDA_CONEJO;
+    }
+
+    /**
+     * @return El nivel de comida del zorro.
+     */
+    public int getNivelDeComida()
+    {
+        return nivelDeComida;
+    }
+
+    /**
+     * Establece el nivel de comida del zorro.
+     * @param nivelDeComida El nivel de comida.
+     */
+    public void setNivelDeComida(int nivelDeComida)
+    {
+        this.nivelDeComida = nivelDeComida;
+    }
+    
     /**
      * Hacer más hambriento a este zorro.
      * Podría dar por resultado la muerte del zorro.
+     * @param campo El campo en el que se registra la muerte.
      */
-    private void incrementarHambre()
+    private void incrementarHambre(Campo campo)
     {
         nivelDeComida--;
         if(nivelDeComida <= 0) {
-            setMuerto();
+            morir(campo, CausaDeEvento.HAMBRE);
         }
     }
     
@@ -125,19 +153,10 @@ public class Zorro extends Animal
      */
     private Ubicacion buscarComida(Campo campo, Ubicacion ubicacion)
     {
-        Iterator<Ubicacion> direccionesAdyacentes =
-                          campo.direccionesAdyacentes(ubicacion);
-        while(direccionesAdyacentes.hasNext()) {
-            Ubicacion lugar = direccionesAdyacentes.next();
-            Animal animal = campo.getAnimalEn(lugar);
-            if(animal instanceof Conejo) {
-                Conejo conejo = (Conejo) animal;
-                if(conejo.estaVivo()) { 
-                    conejo.setMuerto();
-                    nivelDeComida = VALOR_COMIDA_CONEJO;
-                    return lugar;
-                }
-            }
+        buscador.campo = campo;
+        if(campo.recorrerAdyacentes(ubicacion.getFila(), ubicacion.getColumna(), buscador)) {
+            nivelDeComida = VALOR_COMIDA_CONEJO;
+            return campo.getUbicacion(buscador.fila, buscador.columna);
         }
         return null;
     }
@@ -149,6 +168,7 @@ public class Zorro extends Animal
      */
     private int reproducir()
     {
+        RandomGenerator rand = Azar.generador();
         int nacimientos = 0;
         if(sePuedeReproducir() && rand.nextDouble() <= PROBABILIDAD_DE_REPRODUCCION) {
             nacimientos = rand.nextInt(MAXIMO_TAMANIO_DE_CAMADA) + 1;
@@ -156,6 +176,14 @@ public class Zorro extends Animal
         return nacimientos;
     }
     
+    /**
+     * @return El código de especie del zorro.
+     */
+    public int getEspecie()
+    {
+        return Especie.ZORRO;
+    }
+
     /**
      * @return Un texto que representa al zorro.
      */
@@ -171,4 +199,33 @@ public class Zorro extends Animal
     {
         return getEdad() >= EDAD_DE_REPRODUCCION;
     }
+
+    /**
+     * Visitante de las posiciones adyacentes que come el primer conejo
+     * vivo que encuentra y recuerda dónde estaba. Cada zorro usa siempre
+     * el mismo, así buscar comida no crea objetos.
+     */
+    private static class BuscadorDeComida implements VisitanteDeAdyacentes
+    {
+        // El campo en el que se busca.
+        private Campo campo;
+        // La posición del conejo encontrado.
+        private int fila, columna;
+
+        public boolean visitar(int fila, int columna)
+        {
+            // Consulta primero la especie para no leer al ocupante si no es un conejo.
+            if(campo.getEspecieEn(fila, columna) == Especie.CONEJO) {
+                Animal conejo = campo.getAnimalEn(fila, columna);
+                // Si otro zorro lo come al mismo tiempo, sólo uno lo consigue.
+                if(conejo.matar()) {
+                    campo.registrarEvento(CausaDeEvento.DEPREDACION, Especie.CONEJO, fila, columna);
+                    this.fila = fila;
+                    this.columna = columna;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }